@@ -0,0 +1,77 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+/**
+ * A mutable block position, moved along a shape as it is visited by a {@link com.dsh105.commodus.BlockVisitor}
+ */
+public final class BlockCursor {
+
+    private final World world;
+    private int x;
+    private int y;
+    private int z;
+
+    BlockCursor(World world) {
+        this.world = world;
+    }
+
+    void set(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Creates a location at the current position of this cursor
+     *
+     * @return new location at this cursor
+     */
+    public Location toLocation() {
+        return new Location(world, x, y, z);
+    }
+
+    public Block getBlock() {
+        return world.getBlockAt(x, y, z);
+    }
+
+    @Override
+    public String toString() {
+        return "BlockCursor{x=" + x + ", y=" + y + ", z=" + z + "}";
+    }
+}
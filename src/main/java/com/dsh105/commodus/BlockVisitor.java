@@ -0,0 +1,32 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+/**
+ * Receives each block of a shape, such as those generated by {@link com.dsh105.commodus.GeometryUtil#circle(org.bukkit.Location,
+ * int, int, boolean, boolean, boolean, BlockVisitor)}
+ */
+public interface BlockVisitor {
+
+    /**
+     * Visits a block
+     *
+     * @param cursor position of the block. The same cursor is reused for every block, so it must not be kept
+     */
+    void visit(BlockCursor cursor);
+}
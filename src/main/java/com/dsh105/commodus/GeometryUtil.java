@@ -17,19 +17,37 @@
 
 package com.dsh105.commodus;
 
+import com.dsh105.commodus.spatial.EntitySpatialIndex;
+import com.dsh105.commodus.spatial.PlayerSpatialIndex;
+import com.dsh105.commodus.spatial.Region;
+import com.dsh105.commodus.spatial.Sphere;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Collection of maths-based geometry calculating methods
  */
 public class GeometryUtil {
 
+    // Block type ids are 12 bits
+    private static final int MAX_TYPE_ID = 4096;
+
+    // Leave a core for the main server thread
+    private static final int SHAPE_POOL_SIZE = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static ForkJoinPool SHAPE_POOL;
+
     private GeometryUtil() {
     }
 
@@ -67,25 +85,259 @@ public class GeometryUtil {
      * @return a list of locations inside a generated circular shape
      */
     public static List<Location> circle(Location origin, int radius, int height, boolean hollow, boolean sphere, boolean includeAir) {
-        List<Location> blocks = new ArrayList<>();
+        final List<Location> blocks = new ArrayList<>();
+        circle(origin, radius, height, hollow, sphere, includeAir, new BlockVisitor() {
+            @Override
+            public void visit(BlockCursor cursor) {
+                blocks.add(cursor.toLocation());
+            }
+        });
+        return blocks;
+    }
+
+    /**
+     * Visits each block within a circular shape, dependent on the provided conditions
+     * <p>
+     * Unlike {@link #circle(org.bukkit.Location, int, int, boolean, boolean, boolean)}, nothing is allocated for each
+     * block. A single {@link com.dsh105.commodus.BlockCursor} is moved from block to block, and air is filtered using a
+     * snapshot of each chunk the shape passes through
+     *
+     * @param origin     origin or centre of the circle
+     * @param radius     radius of the circle
+     * @param height     height of the circle. If {@code height > 1}, the circle will become a cylinder
+     * @param hollow     true if the generated circle is to be hollow
+     * @param sphere     true if the shape generated is spherical
+     * @param includeAir true if air blocks are to be visited
+     * @param visitor    visitor to pass each block to
+     */
+    public static void circle(Location origin, int radius, int height, boolean hollow, boolean sphere, boolean includeAir, BlockVisitor visitor) {
+        World world = origin.getWorld();
+        BlockCursor cursor = new BlockCursor(world);
         int cx = origin.getBlockX(),
                 cy = origin.getBlockY(),
                 cz = origin.getBlockZ();
+        int radiusSquared = radius * radius;
+        int innerRadiusSquared = (radius - 1) * (radius - 1);
+        int minY = sphere ? cy - radius : cy;
+        int maxY = sphere ? cy + radius : cy + height;
+        int maxHeight = includeAir ? 0 : world.getMaxHeight();
+
+        long snapshotKey = 0;
+        ChunkSnapshot snapshot = null;
+        Map<Long, ChunkSnapshot> snapshots = includeAir ? null : new HashMap<Long, ChunkSnapshot>();
+
         for (int x = cx - radius; x <= cx + radius; x++) {
             for (int z = cz - radius; z <= cz + radius; z++) {
-                for (int y = (sphere ? cy - radius : cy); y < (sphere ? cy + radius : cy + height); y++) {
-                    double dist = (cx - x) * (cx - x) + (cz - z) * (cz - z) + (sphere ? (cy - y) * (cy - y) : 0);
-                    if (dist < radius * radius && !(hollow && dist < (radius - 1) * (radius - 1))) {
-                        Location l = new Location(origin.getWorld(), x, y, z);
-                        if (!includeAir && l.getBlock().getType() == Material.AIR) {
+                int horizontalDist = (cx - x) * (cx - x) + (cz - z) * (cz - z);
+                if (horizontalDist >= radiusSquared) {
+                    // Nothing in this column can be inside
+                    continue;
+                }
+                if (!includeAir) {
+                    long key = ((long) (x >> 4) << 32) | ((z >> 4) & 0xFFFFFFFFL);
+                    if (snapshot == null || key != snapshotKey) {
+                        snapshot = snapshots.get(key);
+                        if (snapshot == null) {
+                            snapshot = world.getChunkAt(x >> 4, z >> 4).getChunkSnapshot();
+                            snapshots.put(key, snapshot);
+                        }
+                        snapshotKey = key;
+                    }
+                }
+                for (int y = minY; y < maxY; y++) {
+                    int dist = horizontalDist + (sphere ? (cy - y) * (cy - y) : 0);
+                    if (dist < radiusSquared && !(hollow && dist < innerRadiusSquared)) {
+                        if (!includeAir && (y < 0 || y >= maxHeight || snapshot.getBlockTypeId(x & 15, y, z & 15) == 0)) {
                             continue;
                         }
-                        blocks.add(l);
+                        cursor.set(x, y, z);
+                        visitor.visit(cursor);
                     }
                 }
             }
         }
-        return blocks;
+    }
+
+    /**
+     * Generates a list of locations within a circular shape, dependent on the provided conditions, off the main thread
+     * <p>
+     * Snapshots of the chunks covered by the shape are taken straight away, so this must be called from the main server
+     * thread. The shape is then evaluated in parallel, and the returned future is completed from a background thread
+     *
+     * @param origin     origin or centre of the circle
+     * @param radius     radius of the circle
+     * @param height     height of the circle. If {@code height > 1}, the circle will become a cylinder
+     * @param hollow     true if the generated circle is to be hollow
+     * @param sphere     true if the shape generated is spherical
+     * @param includeAir true if air can be included in the list of locations
+     * @return a future completed with the list of locations inside a generated circular shape
+     */
+    public static ListenableFuture<List<Location>> circleAsync(Location origin, int radius, int height, boolean hollow, boolean sphere, boolean includeAir) {
+        BitSet typeIds = null;
+        if (!includeAir) {
+            typeIds = new BitSet(MAX_TYPE_ID);
+            typeIds.set(1, MAX_TYPE_ID);
+        }
+        return circleAsync(origin, radius, height, hollow, sphere, typeIds);
+    }
+
+    /**
+     * Generates a list of locations of the given materials within a circular shape, off the main thread
+     * <p>
+     * Snapshots of the chunks covered by the shape are taken straight away, so this must be called from the main server
+     * thread. The shape is then evaluated in parallel, and the returned future is completed from a background thread
+     *
+     * @param origin    origin or centre of the circle
+     * @param radius    radius of the circle
+     * @param height    height of the circle. If {@code height > 1}, the circle will become a cylinder
+     * @param hollow    true if the generated circle is to be hollow
+     * @param sphere    true if the shape generated is spherical
+     * @param materials materials to include in the list of locations
+     * @return a future completed with the list of locations inside a generated circular shape
+     */
+    public static ListenableFuture<List<Location>> circleAsync(Location origin, int radius, int height, boolean hollow, boolean sphere, Collection<Material> materials) {
+        BitSet typeIds = new BitSet(MAX_TYPE_ID);
+        for (Material material : materials) {
+            typeIds.set(material.getId());
+        }
+        return circleAsync(origin, radius, height, hollow, sphere, typeIds);
+    }
+
+    private static ListenableFuture<List<Location>> circleAsync(Location origin, int radius, int height, boolean hollow, boolean sphere, BitSet typeIds) {
+        World world = origin.getWorld();
+        int cx = origin.getBlockX(),
+                cz = origin.getBlockZ();
+
+        Map<Long, ChunkSnapshot> snapshots = null;
+        if (typeIds != null) {
+            snapshots = new HashMap<>();
+            for (int chunkX = (cx - radius) >> 4; chunkX <= (cx + radius) >> 4; chunkX++) {
+                for (int chunkZ = (cz - radius) >> 4; chunkZ <= (cz + radius) >> 4; chunkZ++) {
+                    snapshots.put(((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL), world.getChunkAt(chunkX, chunkZ).getChunkSnapshot());
+                }
+            }
+        }
+
+        final CircleTask task = new CircleTask(world, cx, origin.getBlockY(), cz, radius, height, hollow, sphere,
+                typeIds, snapshots, typeIds == null ? 0 : world.getMaxHeight(), cx - radius, cx + radius + 1);
+        final SettableFuture<List<Location>> future = SettableFuture.create();
+        getShapePool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.set(task.invoke());
+                } catch (Throwable e) {
+                    future.setException(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    private static synchronized ForkJoinPool getShapePool() {
+        if (SHAPE_POOL == null) {
+            SHAPE_POOL = new ForkJoinPool(SHAPE_POOL_SIZE, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                    };
+                    thread.setName("Commodus Shapes #" + thread.getPoolIndex());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, null, false);
+        }
+        return SHAPE_POOL;
+    }
+
+    /**
+     * Stops the threads used to generate shapes asynchronously. Should be called when the plugin using them is
+     * disabled, so that they don't outlive it across reloads. Shapes already being generated are still completed, and
+     * the threads are started again if another shape is requested
+     */
+    public static synchronized void shutdownShapePool() {
+        if (SHAPE_POOL != null) {
+            SHAPE_POOL.shutdown();
+            SHAPE_POOL = null;
+        }
+    }
+
+    /**
+     * Evaluates a slice of a circular shape, splitting it up along the x axis
+     */
+    private static class CircleTask extends RecursiveTask<List<Location>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int COLUMNS_PER_TASK = 4;
+
+        private final World world;
+        private final int cx, cy, cz, radius, height;
+        private final boolean hollow, sphere;
+        private final BitSet typeIds;
+        private final Map<Long, ChunkSnapshot> snapshots;
+        private final int maxHeight;
+        private final int fromX, toX;
+
+        private CircleTask(World world, int cx, int cy, int cz, int radius, int height, boolean hollow, boolean sphere, BitSet typeIds, Map<Long, ChunkSnapshot> snapshots, int maxHeight, int fromX, int toX) {
+            this.world = world;
+            this.cx = cx;
+            this.cy = cy;
+            this.cz = cz;
+            this.radius = radius;
+            this.height = height;
+            this.hollow = hollow;
+            this.sphere = sphere;
+            this.typeIds = typeIds;
+            this.snapshots = snapshots;
+            this.maxHeight = maxHeight;
+            this.fromX = fromX;
+            this.toX = toX;
+        }
+
+        private CircleTask slice(int fromX, int toX) {
+            return new CircleTask(world, cx, cy, cz, radius, height, hollow, sphere, typeIds, snapshots, maxHeight, fromX, toX);
+        }
+
+        @Override
+        protected List<Location> compute() {
+            if (toX - fromX > COLUMNS_PER_TASK) {
+                int middle = fromX + (toX - fromX) / 2;
+                CircleTask right = slice(middle, toX);
+                right.fork();
+                List<Location> blocks = slice(fromX, middle).compute();
+                blocks.addAll(right.join());
+                return blocks;
+            }
+
+            List<Location> blocks = new ArrayList<>();
+            int radiusSquared = radius * radius;
+            int innerRadiusSquared = (radius - 1) * (radius - 1);
+            int minY = sphere ? cy - radius : cy;
+            int maxY = sphere ? cy + radius : cy + height;
+            for (int x = fromX; x < toX; x++) {
+                for (int z = cz - radius; z <= cz + radius; z++) {
+                    int horizontalDist = (cx - x) * (cx - x) + (cz - z) * (cz - z);
+                    if (horizontalDist >= radiusSquared) {
+                        continue;
+                    }
+                    ChunkSnapshot snapshot = snapshots == null ? null : snapshots.get(((long) (x >> 4) << 32) | ((z >> 4) & 0xFFFFFFFFL));
+                    for (int y = minY; y < maxY; y++) {
+                        int dist = horizontalDist + (sphere ? (cy - y) * (cy - y) : 0);
+                        if (dist < radiusSquared && !(hollow && dist < innerRadiusSquared)) {
+                            if (typeIds != null) {
+                                int typeId = y < 0 || y >= maxHeight ? 0 : snapshot.getBlockTypeId(x & 15, y, z & 15);
+                                if (!typeIds.get(typeId)) {
+                                    continue;
+                                }
+                            }
+                            blocks.add(new Location(world, x, y, z));
+                        }
+                    }
+                }
+            }
+            return blocks;
+        }
     }
 
     /**
@@ -102,8 +354,88 @@ public class GeometryUtil {
         return !(x1 >= (x + range) || z1 >= (z + range) || x1 <= (x - range) || z1 <= (z - range));
     }
 
+    /**
+     * Gets the squared distance between a location and a point. Worlds are not compared
+     *
+     * @param location location to measure from
+     * @param x        x coordinate of the point
+     * @param y        y coordinate of the point
+     * @param z        z coordinate of the point
+     * @return squared distance between the location and the point
+     */
+    public static double distanceSquared(Location location, double x, double y, double z) {
+        double dx = location.getX() - x, dy = location.getY() - y, dz = location.getZ() - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Gets the squared distance between two points. Cheaper than the distance itself, and ordered the same way
+     *
+     * @return squared distance between the two points
+     */
+    public static double distanceSquared(double x1, double y1, double z1, double x2, double y2, double z2) {
+        double dx = x1 - x2, dy = y1 - y2, dz = z1 - z2;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Returns whether two locations are in the same world and within a certain distance of each other, without taking a
+     * square root
+     *
+     * @param location first location
+     * @param other    second location
+     * @param distance maximum distance, inclusive
+     * @return true if the locations are within the given distance
+     */
+    public static boolean isWithinDistance(Location location, Location other, double distance) {
+        return location.getWorld() == other.getWorld() && distanceSquared(location, other.getX(), other.getY(), other.getZ()) <= distance * distance;
+    }
+
+    /**
+     * Returns a list of entities inside a region
+     * <p>
+     * If the {@link com.dsh105.commodus.spatial.EntitySpatialIndex} is enabled, only entities of the given type in chunks
+     * overlapping the region are checked
+     *
+     * @param entityType type (or super-type) of entity to include in the search
+     * @param world      world to search
+     * @param region     region to search within
+     * @param <T>        entity restriction to place on the search
+     * @return a list of entities inside the region
+     */
+    public static <T extends Entity> List<T> getEntitiesInRegion(Class<T> entityType, World world, Region region) {
+        if (EntitySpatialIndex.isEnabled()) {
+            return EntitySpatialIndex.getEntitiesInRegion(entityType, world, region);
+        }
+        List<T> entities = new ArrayList<>();
+        Location location = new Location(world, 0, 0, 0);
+        for (T entity : world.getEntitiesByClass(entityType)) {
+            entity.getLocation(location);
+            if (region.contains(location.getX(), location.getY(), location.getZ())) {
+                entities.add(entity);
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Returns a list of entities within a true (spherical) radius of a location
+     *
+     * @param entityType type (or super-type) of entity to include in the search
+     * @param centre     centre of the area to search
+     * @param radius     radius to search within, inclusive
+     * @param <T>        entity restriction to place on the search
+     * @return a list of entities within the given radius
+     */
+    public static <T extends Entity> List<T> getEntitiesInRadius(Class<T> entityType, Location centre, double radius) {
+        return getEntitiesInRegion(entityType, centre.getWorld(), new Sphere(centre.getX(), centre.getY(), centre.getZ(), radius));
+    }
+
     /**
      * Returns a list of entities near a given location
+     * <p>
+     * If the {@link com.dsh105.commodus.spatial.EntitySpatialIndex} is enabled, only entities of the given type in nearby
+     * chunks are checked
      *
      * @param entityType type (or super-type) of entity to include in the search
      * @param origin     origin or centre of the area to search
@@ -112,6 +444,9 @@ public class GeometryUtil {
      * @return a list of nearby entities
      */
     public static <T extends Entity> List<T> getNearbyEntities(Class<T> entityType, Location origin, int range) {
+        if (EntitySpatialIndex.isEnabled()) {
+            return EntitySpatialIndex.getNearbyEntities(entityType, origin, range);
+        }
         List<T> entities = new ArrayList<>();
         for (Entity entity : origin.getWorld().getEntities()) {
             if (range <= 0 || isInBorder(origin, entity.getLocation(), range)) {
@@ -136,12 +471,17 @@ public class GeometryUtil {
 
     /**
      * Returns a list of players near a given location
+     * <p>
+     * If the {@link com.dsh105.commodus.spatial.PlayerSpatialIndex} is enabled, only players in nearby chunks are checked
      *
      * @param origin origin or centre
      * @param range  range to search within
      * @return a list of nearby players
      */
     public static List<Player> getNearbyPlayers(Location origin, int range) {
+        if (PlayerSpatialIndex.isEnabled()) {
+            return PlayerSpatialIndex.getNearbyPlayers(origin, range);
+        }
         return getNearbyEntities(Player.class, origin, range);
     }
 }
\ No newline at end of file
@@ -17,17 +17,34 @@
 
 package com.dsh105.commodus;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
 
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utilities for making the transition between names and UUIDs smoother and easier
  */
 public class IdentUtil {
 
+    private static volatile Boolean SUPPORTS_UUID;
+
+    // Online players by UUID, maintained while a plugin has enabled the index
+    private static final ConcurrentMap<UUID, Player> ONLINE_PLAYERS = new ConcurrentHashMap<>();
+    private static volatile Listener INDEX_LISTENER;
+
     private IdentUtil() {
     }
 
@@ -39,12 +56,80 @@ public class IdentUtil {
      * @return true if the server supports the switch to UUIDs
      */
     public static boolean supportsUuid() {
-        try {
-            Bukkit.class.getDeclaredMethod("getPlayer", UUID.class);
-        } catch (NoSuchMethodException e) {
-            return false;
+        Boolean supportsUuid = SUPPORTS_UUID;
+        if (supportsUuid == null) {
+            // This won't change while the server is running
+            try {
+                Bukkit.class.getDeclaredMethod("getPlayer", UUID.class);
+                supportsUuid = ServerUtil.getVersion().isCompatible("1.7.5");
+            } catch (NoSuchMethodException e) {
+                supportsUuid = false;
+            }
+            SUPPORTS_UUID = supportsUuid;
+        }
+        return supportsUuid;
+    }
+
+    /**
+     * Enables an index of online players by UUID, used by {@link #getPlayerOf(Object)} instead of searching through
+     * every online player
+     * <p>
+     * The index is kept up to date until the given plugin is disabled
+     *
+     * @param plugin plugin to register the index under
+     */
+    public static synchronized void enablePlayerIndex(final Plugin plugin) {
+        if (INDEX_LISTENER != null || !supportsUuid()) {
+            return;
+        }
+
+        Listener listener = new Listener() {
+
+            @EventHandler(priority = EventPriority.LOWEST)
+            public void onJoin(PlayerJoinEvent event) {
+                ONLINE_PLAYERS.put(event.getPlayer().getUniqueId(), event.getPlayer());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onQuit(PlayerQuitEvent event) {
+                ONLINE_PLAYERS.remove(event.getPlayer().getUniqueId(), event.getPlayer());
+            }
+
+            @EventHandler
+            public void onDisable(PluginDisableEvent event) {
+                if (event.getPlugin() == plugin) {
+                    disablePlayerIndex();
+                }
+            }
+        };
+        Bukkit.getPluginManager().registerEvents(listener, plugin);
+        for (Player player : ServerUtil.getOnlinePlayers()) {
+            ONLINE_PLAYERS.put(player.getUniqueId(), player);
+        }
+        INDEX_LISTENER = listener;
+    }
+
+    /**
+     * Disables the index of online players enabled by {@link #enablePlayerIndex(org.bukkit.plugin.Plugin)}
+     */
+    public static synchronized void disablePlayerIndex() {
+        if (INDEX_LISTENER != null) {
+            HandlerList.unregisterAll(INDEX_LISTENER);
+            INDEX_LISTENER = null;
+            ONLINE_PLAYERS.clear();
         }
-        return ServerUtil.getVersion().isCompatible("1.7.5");
+    }
+
+    /**
+     * Returns the identification for a given player as a typed handle
+     * <p>
+     * This call fetches results from Mojang servers if the provided player is offline
+     *
+     * @param player player to identify
+     * @return identification for the given player
+     */
+    public static Identification getIdentification(OfflinePlayer player) {
+        return Identification.of(player, true);
     }
 
     /**
@@ -69,6 +154,16 @@ public class IdentUtil {
      * @return true if the identification for both players is identical
      */
     public static boolean areIdentical(OfflinePlayer player, OfflinePlayer compareTo) {
+        if (player == compareTo) {
+            return true;
+        }
+        if (player instanceof Player && compareTo instanceof Player) {
+            // Both online - no need to go looking for anything
+            if (supportsUuid()) {
+                return player.getUniqueId().equals(compareTo.getUniqueId());
+            }
+            return player.getName().equals(compareTo.getName());
+        }
         return getIdentificationForAsString(player).equals(getIdentificationForAsString(compareTo));
     }
 
@@ -93,13 +188,29 @@ public class IdentUtil {
      */
     public static Object getIdentificationFor(String playerName) {
         try {
-            return UUIDFetcher.getUUIDOf(playerName);
+            UUID uuid = UUIDFetcher.getUUIDOf(playerName);
+            if (uuid != null) {
+                return uuid;
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
         return playerName;
     }
 
+    /**
+     * Returns the identification for a given player name without blocking the calling thread
+     * <p>
+     * Lookups are batched with any others made at the same time and completed on a background thread. See {@link
+     * com.dsh105.commodus.UUIDFetcher#getUUIDOfAsync(String)}
+     *
+     * @param playerName name of the player to retrieve a UUID for
+     * @return a future completing with the UUID of the given player name, or null if no such player exists
+     */
+    public static ListenableFuture<UUID> getIdentificationForAsync(String playerName) {
+        return UUIDFetcher.getUUIDOfAsync(playerName);
+    }
+
     /**
      * Returns the identification for a given player
      *
@@ -166,15 +277,26 @@ public class IdentUtil {
      * @return player represented by the given identification, or null if the player is not online
      */
     public static Player getPlayerOf(Object identification) {
+        if (identification instanceof Identification) {
+            Identification ident = (Identification) identification;
+            identification = ident.isUniqueId() ? ident.getUniqueId() : ident.getName();
+        }
         if (supportsUuid()) {
             if (identification instanceof UUID) {
-                return Bukkit.getPlayer((UUID) identification);
+                return getPlayer((UUID) identification);
             } else if (identification instanceof String) {
-                return Bukkit.getPlayer(StringUtil.convertUUID((String) identification));
+                return getPlayer(StringUtil.convertUUID((String) identification));
             }
         } else if (identification instanceof String) {
             return Bukkit.getPlayerExact((String) identification);
         }
         return null;
     }
+
+    private static Player getPlayer(UUID uuid) {
+        if (INDEX_LISTENER != null) {
+            return uuid == null ? null : ONLINE_PLAYERS.get(uuid);
+        }
+        return Bukkit.getPlayer(uuid);
+    }
 }
\ No newline at end of file
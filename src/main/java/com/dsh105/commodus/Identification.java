@@ -0,0 +1,182 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+
+/**
+ * Typed identification of a player - either a UUID or, on servers that don't support UUIDs, a name
+ * <p>
+ * UUID identifications are compared as UUIDs, without converting them to Strings
+ */
+public final class Identification {
+
+    private final UUID uuid;
+    private final String name;
+
+    private Identification(UUID uuid, String name) {
+        this.uuid = uuid;
+        this.name = name;
+    }
+
+    /**
+     * Returns the identification of the given UUID
+     *
+     * @param uuid UUID to identify. Must not be null
+     * @return identification of the given UUID
+     */
+    public static Identification of(UUID uuid) {
+        return new Identification(Affirm.notNull(uuid, "UUID cannot be null"), null);
+    }
+
+    /**
+     * Returns the identification of the given player name
+     *
+     * @param name player name to identify. Must not be null
+     * @return identification of the given name
+     */
+    public static Identification of(String name) {
+        return new Identification(null, Affirm.notNull(name, "Name cannot be null"));
+    }
+
+    /**
+     * Returns the identification of an online player, according to whether the server supports UUIDs
+     *
+     * @param player player to identify
+     * @return identification of the given player
+     */
+    public static Identification of(Player player) {
+        if (IdentUtil.supportsUuid()) {
+            return of(player.getUniqueId());
+        }
+        return of(player.getName());
+    }
+
+    /**
+     * Returns the identification of a player
+     *
+     * @param player         player to identify
+     * @param enableFetching if set to true, the UUID will be fetched from Mojang if {@code player} is offline
+     * @return identification of the given player, or null if the player is offline and fetching is disabled
+     */
+    public static Identification of(OfflinePlayer player, boolean enableFetching) {
+        if (player instanceof Player) {
+            return of((Player) player);
+        }
+        Object ident = IdentUtil.getIdentificationFor(player, enableFetching);
+        if (ident instanceof UUID) {
+            return of((UUID) ident);
+        }
+        return ident == null ? null : of(ident.toString());
+    }
+
+    /**
+     * Returns whether this identification is a UUID rather than a name
+     *
+     * @return true if this identification is a UUID
+     */
+    public boolean isUniqueId() {
+        return name == null;
+    }
+
+    /**
+     * Gets the UUID of this identification
+     *
+     * @return UUID represented by this identification, or null if this identification is a name
+     */
+    public UUID getUniqueId() {
+        return uuid;
+    }
+
+    /**
+     * Gets the player name of this identification
+     *
+     * @return name represented by this identification, or null if this identification is a UUID
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns whether this identification matches the given UUID
+     *
+     * @param uuid UUID to compare against
+     * @return true if this identification represents the given UUID
+     */
+    public boolean matches(UUID uuid) {
+        return this.uuid != null && this.uuid.equals(uuid);
+    }
+
+    /**
+     * Returns whether this identification matches the given online player
+     *
+     * @param player player to compare against
+     * @return true if this identification represents the given player
+     */
+    public boolean matches(Player player) {
+        if (player == null) {
+            return false;
+        }
+        return name == null ? matches(player.getUniqueId()) : name.equals(player.getName());
+    }
+
+    /**
+     * Returns the online player represented by this identification
+     *
+     * @return player represented by this identification, or null if the player is not online
+     */
+    public Player getPlayer() {
+        return IdentUtil.getPlayerOf(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Identification)) {
+            return false;
+        }
+        Identification other = (Identification) o;
+        if (name != null) {
+            return name.equals(other.name);
+        }
+        return uuid.equals(other.uuid);
+    }
+
+    @Override
+    public int hashCode() {
+        if (name != null) {
+            return name.hashCode();
+        }
+        return uuid.hashCode();
+    }
+
+    /**
+     * Returns this identification in the same string format as {@link com.dsh105.commodus.IdentUtil#getIdentificationForAsString(org.bukkit.OfflinePlayer)}
+     *
+     * @return this identification as a string
+     */
+    @Override
+    public String toString() {
+        return name != null ? name : uuid.toString();
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.UUID;
+
+/**
+ * Streaming parser for profile responses from the Mojang API, e.g. {@code [{"id":"...","name":"..."}, ...]}
+ * <p>
+ * Reads the {@code id} and {@code name} of each profile straight off the stream, building each UUID from the two
+ * halves of its hex representation. Any other properties are skipped. Instances are not thread-safe.
+ */
+public class ProfileParser {
+
+    private final Reader reader;
+    private final char[] buffer = new char[4096];
+    private int position;
+    private int limit;
+
+    private final StringBuilder text = new StringBuilder(32);
+
+    private ProfileParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Receives each profile read by a {@link com.dsh105.commodus.ProfileParser}
+     */
+    public interface Handler {
+
+        void handle(String name, UUID uuid);
+    }
+
+    /**
+     * Parses an array of profiles from the given reader
+     *
+     * @param reader  reader to parse from. Not closed once parsing is complete
+     * @param handler handler to pass each profile to
+     * @throws IOException if the reader fails or the response is malformed
+     */
+    public static void parse(Reader reader, Handler handler) throws IOException {
+        new ProfileParser(reader).parseArray(handler);
+    }
+
+    private void parseArray(Handler handler) throws IOException {
+        expect('[');
+        if (peekNonWhitespace() == ']') {
+            read();
+            return;
+        }
+        while (true) {
+            parseProfile(handler);
+            char next = readNonWhitespace();
+            if (next == ']') {
+                return;
+            }
+            if (next != ',') {
+                throw unexpected(next);
+            }
+        }
+    }
+
+    private void parseProfile(Handler handler) throws IOException {
+        expect('{');
+        long mostSignificant = 0;
+        long leastSignificant = 0;
+        boolean hasId = false;
+        String name = null;
+
+        if (peekNonWhitespace() == '}') {
+            read();
+            return;
+        }
+        while (true) {
+            expect('"');
+            readString();
+            expect(':');
+            if (textEquals("id")) {
+                expect('"');
+                int digits = 0;
+                char c;
+                while ((c = read()) != '"') {
+                    if (c == '-') {
+                        continue;
+                    }
+                    int digit = Character.digit(c, 16);
+                    if (digit < 0 || digits >= 32) {
+                        throw new IOException("Malformed profile id");
+                    }
+                    if (digits < 16) {
+                        mostSignificant = (mostSignificant << 4) | digit;
+                    } else {
+                        leastSignificant = (leastSignificant << 4) | digit;
+                    }
+                    digits++;
+                }
+                if (digits != 32) {
+                    throw new IOException("Malformed profile id");
+                }
+                hasId = true;
+            } else if (textEquals("name")) {
+                expect('"');
+                readString();
+                name = text.toString();
+            } else {
+                skipValue();
+            }
+
+            char next = readNonWhitespace();
+            if (next == '}') {
+                break;
+            }
+            if (next != ',') {
+                throw unexpected(next);
+            }
+        }
+
+        if (hasId && name != null) {
+            handler.handle(name, new UUID(mostSignificant, leastSignificant));
+        }
+    }
+
+    private void skipValue() throws IOException {
+        char c = readNonWhitespace();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = read();
+                if (c == '"') {
+                    readString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+        } else {
+            // Numbers, booleans and null
+            while (true) {
+                c = peek();
+                if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                    break;
+                }
+                read();
+            }
+        }
+    }
+
+    // Reads the remainder of a string (after its opening quote) into the text buffer
+    private void readString() throws IOException {
+        text.setLength(0);
+        char c;
+        while ((c = read()) != '"') {
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        int codePoint = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) {
+                                throw new IOException("Malformed unicode escape");
+                            }
+                            codePoint = (codePoint << 4) | digit;
+                        }
+                        c = (char) codePoint;
+                        break;
+                    default:
+                        // \" \\ and \/
+                        break;
+                }
+            }
+            text.append(c);
+        }
+    }
+
+    private boolean textEquals(String value) {
+        if (text.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (text.charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void expect(char expected) throws IOException {
+        char c = readNonWhitespace();
+        if (c != expected) {
+            throw unexpected(c);
+        }
+    }
+
+    private char readNonWhitespace() throws IOException {
+        char c = peekNonWhitespace();
+        position++;
+        return c;
+    }
+
+    private char peekNonWhitespace() throws IOException {
+        char c;
+        while (Character.isWhitespace(c = peek())) {
+            position++;
+        }
+        return c;
+    }
+
+    private char read() throws IOException {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private char peek() throws IOException {
+        if (position >= limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                throw new IOException("Unexpected end of profile response");
+            }
+        }
+        return buffer[position];
+    }
+
+    private IOException unexpected(char c) {
+        return new IOException("Unexpected character in profile response: " + c);
+    }
+}
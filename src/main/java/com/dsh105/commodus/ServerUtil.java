@@ -19,11 +19,11 @@ package com.dsh105.commodus;
 
 import com.captainbern.minecraft.reflection.MinecraftMethods;
 import com.captainbern.minecraft.reflection.MinecraftReflection;
+import com.dsh105.commodus.packet.PacketSender;
 import com.dsh105.commodus.reflection.Reflection;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -42,6 +42,7 @@ public class ServerUtil {
     private static String MC_PACKAGE_NAME;
     private static Version SERVER_VERSION;
     private static Version BUKKIT_VERSION;
+    private static volatile boolean MINECRAFT_METHODS_UNAVAILABLE;
     private ServerUtil() {
     }
 
@@ -202,25 +203,18 @@ public class ServerUtil {
      * @param packet packet to send
      */
     public static void sendPacket(Object packet, Player player) {
-        try {
-            MinecraftMethods.sendPacket(player, packet);
-            return;
-        } catch (NoClassDefFoundError e) {
-            // do nothing, continue with the backup plan
-        }
-
-        Class<?> packetClass = Reflection.getNMSClass("Packet");
-        if (!packetClass.isAssignableFrom(packet.getClass())) {
-            throw new IllegalArgumentException("Object to send must be a subclass of " + packetClass.getCanonicalName());
+        if (!MINECRAFT_METHODS_UNAVAILABLE) {
+            try {
+                MinecraftMethods.sendPacket(player, packet);
+                return;
+            } catch (NoClassDefFoundError e) {
+                // Don't bother trying again
+                MINECRAFT_METHODS_UNAVAILABLE = true;
+            }
         }
 
-        Method getHandle = Reflection.getMethod(player.getClass(), "getHandle");
-        Field connection = Reflection.getField(Reflection.getNMSClass("EntityPlayer"), "playerConnection");
-        Method sendPacket = Reflection.getMethod(connection.getType(), "sendPacket", packetClass);
-
-        Object playerHandle = Reflection.invoke(getHandle, player);
-        Object playerConnection = Reflection.getFieldValue(connection, playerHandle);
-        Reflection.invoke(sendPacket, playerConnection, packet);
+        // Backup plan
+        PacketSender.getInstance().sendPacket(packet, player);
     }
 
     /**
@@ -230,6 +224,10 @@ public class ServerUtil {
      * @param packet  packet to send
      */
     public static void sendPacket(Object packet, Collection<Player> players) {
+        if (MINECRAFT_METHODS_UNAVAILABLE) {
+            PacketSender.getInstance().broadcast(packet, players);
+            return;
+        }
         for (Player player : players) {
             sendPacket(packet, player);
         }
@@ -0,0 +1,149 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread-safe token bucket rate limiter that adapts to being throttled
+ * <p>
+ * Each call to {@link #acquire()} takes one token, waiting for one to become available if necessary. When the remote
+ * end signals that too many requests are being made, {@link #penalise(long)} halves the refill rate and blocks all
+ * callers for the given time. Every successful request then raises the rate again by a small step, up to the rate the
+ * bucket was created with.
+ */
+public class TokenBucket {
+
+    private static final double RECOVERY_STEPS = 10;
+
+    private final double capacity;
+    private final double maxRate;
+    private final double minRate;
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long blockedUntil;
+
+    /**
+     * Constructs a new token bucket, starting full
+     *
+     * @param capacity        maximum number of tokens held at once, i.e. the largest allowed burst
+     * @param tokensPerSecond rate at which tokens are refilled
+     */
+    public TokenBucket(double capacity, double tokensPerSecond) {
+        Affirm.isTrue(capacity >= 1, "Capacity must be at least 1");
+        Affirm.isTrue(tokensPerSecond > 0, "Refill rate must be positive");
+        this.capacity = capacity;
+        this.maxRate = tokensPerSecond;
+        this.minRate = tokensPerSecond / 64;
+        this.rate = tokensPerSecond;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+        this.blockedUntil = lastRefill;
+    }
+
+    public double getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the current refill rate, which may be lower than the configured rate if this bucket has been penalised
+     *
+     * @return the current number of tokens added each second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Takes a token, waiting until one is available
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long wait;
+        while ((wait = reserve()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes a token if one is available right now
+     *
+     * @return true if a token was taken
+     */
+    public boolean tryAcquire() {
+        return reserve() == 0;
+    }
+
+    /**
+     * Slows this bucket down after being rate limited
+     *
+     * @param retryAfter time (in milliseconds) before any further tokens are handed out
+     */
+    public synchronized void penalise(long retryAfter) {
+        refill();
+        rate = Math.max(minRate, rate / 2);
+        tokens = 0;
+        blockedUntil = Math.max(blockedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryAfter));
+    }
+
+    /**
+     * Records a successful request, recovering some of the rate lost to any previous penalties
+     */
+    public synchronized void reward() {
+        if (rate < maxRate) {
+            refill();
+            rate = Math.min(maxRate, rate + maxRate / RECOVERY_STEPS);
+        }
+    }
+
+    /**
+     * Restores this bucket to the state it was created in: full, at its configured rate and without any penalty
+     */
+    public synchronized void reset() {
+        rate = maxRate;
+        tokens = capacity;
+        lastRefill = System.nanoTime();
+        blockedUntil = lastRefill;
+    }
+
+    private synchronized long reserve() {
+        refill();
+        long now = System.nanoTime();
+        if (now < blockedUntil) {
+            return blockedUntil - now;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        // Nothing is earned while blocked, otherwise a full burst would follow straight after a penalty
+        long from = Math.max(lastRefill, blockedUntil);
+        if (now > from) {
+            tokens = Math.min(capacity, tokens + (now - from) * rate / TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefill = now;
+    }
+}
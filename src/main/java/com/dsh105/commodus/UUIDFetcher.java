@@ -17,22 +17,34 @@
 
 package com.dsh105.commodus;
 
+import com.google.common.base.Charsets;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author evilmidget38
@@ -45,23 +57,59 @@ import java.util.concurrent.TimeUnit;
 public class UUIDFetcher implements Callable<Map<String, UUID>> {
 
     private static final double PROFILES_PER_REQUEST = 100;
-    private static final String PROFILE_URL = "https://api.mojang.com/profiles/minecraft";
+    static final String PROFILE_URL = "https://api.mojang.com/profiles/minecraft";
+    private static final long BATCH_DELAY = 50L; // Time (ms) to wait for more names before sending a batch
+    private static final int MAX_ATTEMPTS = 5; // Attempts made at each request when being rate limited
+    private static final int TOO_MANY_REQUESTS = 429;
     private static Cache<String, UUID> UUID_CACHE = CacheBuilder.newBuilder()
             .expireAfterWrite(1, TimeUnit.HOURS)
             .build(new CacheLoader<String, UUID>() {
                 @Override
                 public UUID load(String name) throws Exception {
+                    UUID stored = getStoredUUID(name);
+                    if (stored != null) {
+                        return stored;
+                    }
                     return new UUIDFetcher(Arrays.asList(name)).call().get(name);
                 }
             });
 
-    private final JSONParser jsonParser = new JSONParser();
+    // Asynchronous lookups, keyed by lower case name so that each name is only ever requested once at a time
+    private static final ConcurrentMap<String, SettableFuture<UUID>> PENDING_LOOKUPS = new ConcurrentHashMap<>();
+    private static final Queue<String> LOOKUP_QUEUE = new ConcurrentLinkedQueue<>();
+    private static final AtomicBoolean LOOKUP_SCHEDULED = new AtomicBoolean();
+    private static final ScheduledExecutorService LOOKUP_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Commodus UUIDFetcher").setDaemon(true).build());
+
+    private static volatile UUIDStore STORE;
+
+    // Mojang allows 600 requests every 10 minutes - this budget is shared by every fetcher
+    private static final TokenBucket REQUEST_LIMITER = new TokenBucket(10, 1);
+
+    // Names that Mojang has no profile for, mapped to the time at which they should be looked up again
+    private static final ConcurrentMap<String, Long> UNKNOWN_NAMES = new ConcurrentHashMap<>();
+    private static volatile long UNKNOWN_NAME_EXPIRY = TimeUnit.MINUTES.toMillis(10);
+
     private final List<String> names;
-    private final boolean rateLimiting;
+    private final String profileUrl;
 
-    public UUIDFetcher(List<String> names, boolean rateLimiting) {
+    /**
+     * Constructs a new fetcher
+     * <p>
+     * Every request waits for the rate limiter shared by all fetchers, whether or not {@code rateLimiting} is set. The
+     * flag is kept for compatibility only
+     *
+     * @param names        names to fetch UUIDs for
+     * @param rateLimiting no longer used
+     * @param profileUrl   URL of the profile API
+     */
+    public UUIDFetcher(List<String> names, boolean rateLimiting, String profileUrl) {
         this.names = ImmutableList.copyOf(names);
-        this.rateLimiting = rateLimiting;
+        this.profileUrl = profileUrl;
+    }
+
+    public UUIDFetcher(List<String> names, boolean rateLimiting) {
+        this(names, rateLimiting, PROFILE_URL);
     }
 
     public UUIDFetcher(List<String> names) {
@@ -72,6 +120,112 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
         return UUID_CACHE;
     }
 
+    /**
+     * Gets the persistent store backing the UUID cache
+     *
+     * @return the persistent store in use, or null if none has been opened
+     */
+    public static UUIDStore getStore() {
+        return STORE;
+    }
+
+    /**
+     * Opens a persistent store in the given file, warming the UUID cache with every mapping it holds
+     * <p>
+     * All UUIDs fetched from Mojang from here on are written to the store, and the store is consulted before making
+     * any new requests. This is best called when a plugin is enabled, before any players join
+     *
+     * @param file file to keep mappings in
+     * @return the number of mappings loaded
+     * @throws IOException if the store could not be read
+     */
+    public static int openStore(File file) throws IOException {
+        UUIDStore store = new UUIDStore(file);
+        int loaded = store.load();
+        getCache().asMap().putAll(store.getMappings());
+
+        UUIDStore previous = STORE;
+        STORE = store;
+        if (previous != null) {
+            previous.close();
+        }
+        return loaded;
+    }
+
+    /**
+     * Closes the persistent store, if one is open
+     */
+    public static void closeStore() {
+        UUIDStore store = STORE;
+        STORE = null;
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Gets the rate limiter shared by all UUIDFetchers
+     * <p>
+     * Requests wait for a token before being sent. If Mojang responds with 429 (Too Many Requests), the limiter is
+     * slowed down and the request retried
+     *
+     * @return the shared rate limiter
+     */
+    public static TokenBucket getRequestLimiter() {
+        return REQUEST_LIMITER;
+    }
+
+    /**
+     * Sets how long names without a Mojang profile are remembered before they are looked up again
+     *
+     * @param duration duration to remember unknown names for
+     * @param unit     unit of the given duration
+     */
+    public static void setUnknownNameExpiry(long duration, TimeUnit unit) {
+        UNKNOWN_NAME_EXPIRY = unit.toMillis(duration);
+    }
+
+    /**
+     * Returns whether the given name was recently found to have no Mojang profile
+     *
+     * @param name name to check
+     * @return true if the name is known not to exist
+     */
+    public static boolean isUnknown(String name) {
+        Long expiry = UNKNOWN_NAMES.get(name.toLowerCase());
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry < System.currentTimeMillis()) {
+            UNKNOWN_NAMES.remove(name.toLowerCase(), expiry);
+            return false;
+        }
+        return true;
+    }
+
+    // Restores the shared rate limiter and forgets every unknown name
+    static void resetLimits() {
+        REQUEST_LIMITER.reset();
+        UNKNOWN_NAMES.clear();
+    }
+
+    private static void markUnknown(String name) {
+        long now = System.currentTimeMillis();
+        if (UNKNOWN_NAMES.size() >= 1024) {
+            for (Map.Entry<String, Long> entry : UNKNOWN_NAMES.entrySet()) {
+                if (entry.getValue() < now) {
+                    UNKNOWN_NAMES.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        UNKNOWN_NAMES.put(name.toLowerCase(), now + UNKNOWN_NAME_EXPIRY);
+    }
+
+    private static UUID getStoredUUID(String name) {
+        UUIDStore store = STORE;
+        return store == null ? null : store.get(name);
+    }
+
     private static void writeBody(HttpURLConnection connection, String body) throws Exception {
         OutputStream stream = connection.getOutputStream();
         stream.write(body.getBytes());
@@ -79,8 +233,8 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
         stream.close();
     }
 
-    private static HttpURLConnection createConnection() throws Exception {
-        URL url = new URL(PROFILE_URL);
+    private static HttpURLConnection createConnection(String profileUrl) throws Exception {
+        URL url = new URL(profileUrl);
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setRequestMethod("POST");
         connection.setRequestProperty("Content-Type", "application/json");
@@ -90,10 +244,6 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
         return connection;
     }
 
-    private static UUID getUUID(String id) {
-        return UUID.fromString(id.substring(0, 8) + "-" + id.substring(8, 12) + "-" + id.substring(12, 16) + "-" + id.substring(16, 20) + "-" + id.substring(20, 32));
-    }
-
     public static byte[] toBytes(UUID uuid) {
         ByteBuffer byteBuffer = ByteBuffer.wrap(new byte[16]);
         byteBuffer.putLong(uuid.getMostSignificantBits());
@@ -112,28 +262,172 @@ public class UUIDFetcher implements Callable<Map<String, UUID>> {
     }
 
     public static UUID getUUIDOf(String name) throws Exception {
-        return getCache().get(name);
+        if (isUnknown(name)) {
+            return null;
+        }
+        try {
+            return getCache().get(name);
+        } catch (Exception e) {
+            // Nothing to cache if Mojang didn't return a profile
+            if (isUnknown(name)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Fetches the UUID of the given name without blocking the calling thread
+     * <p>
+     * Concurrent lookups for the same name share a single request, and names requested by different callers within a
+     * short window are sent to Mojang together in batches of up to 100 profiles. The returned future is completed on a
+     * background thread - any work involving the Bukkit API should be passed back to the main thread.
+     *
+     * @param name name to fetch a UUID for
+     * @return a future completing with the UUID of the given name, or null if no such profile exists
+     */
+    public static ListenableFuture<UUID> getUUIDOfAsync(String name) {
+        UUID cached = getCache().asMap().get(name);
+        if (cached == null) {
+            cached = getStoredUUID(name);
+            if (cached != null) {
+                getCache().asMap().put(name, cached);
+            }
+        }
+        if (cached != null) {
+            return Futures.immediateFuture(cached);
+        }
+        if (isUnknown(name)) {
+            return Futures.immediateFuture(null);
+        }
+
+        SettableFuture<UUID> future = SettableFuture.create();
+        SettableFuture<UUID> pending = PENDING_LOOKUPS.putIfAbsent(name.toLowerCase(), future);
+        if (pending != null) {
+            // Someone else is already waiting on this one
+            return pending;
+        }
+
+        LOOKUP_QUEUE.add(name);
+        if (LOOKUP_SCHEDULED.compareAndSet(false, true)) {
+            LOOKUP_EXECUTOR.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    processLookups();
+                }
+            }, BATCH_DELAY, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    private static void processLookups() {
+        // Anything queued from here on will schedule another run
+        LOOKUP_SCHEDULED.set(false);
+
+        List<String> batch = new ArrayList<>();
+        String name;
+        while ((name = LOOKUP_QUEUE.poll()) != null) {
+            batch.add(name);
+            if (batch.size() >= PROFILES_PER_REQUEST) {
+                completeLookups(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            completeLookups(batch);
+        }
+    }
+
+    private static void completeLookups(List<String> names) {
+        Map<String, UUID> uuidMap = new HashMap<>();
+        try {
+            for (Map.Entry<String, UUID> entry : new UUIDFetcher(names, true).call().entrySet()) {
+                // Mojang returns names in their proper case
+                uuidMap.put(entry.getKey().toLowerCase(), entry.getValue());
+            }
+        } catch (Exception e) {
+            for (String name : names) {
+                SettableFuture<UUID> future = PENDING_LOOKUPS.remove(name.toLowerCase());
+                if (future != null) {
+                    future.setException(e);
+                }
+            }
+            return;
+        }
+
+        for (String name : names) {
+            UUID uuid = uuidMap.get(name.toLowerCase());
+            if (uuid != null) {
+                getCache().asMap().put(name, uuid);
+            }
+            SettableFuture<UUID> future = PENDING_LOOKUPS.remove(name.toLowerCase());
+            if (future != null) {
+                future.set(uuid);
+            }
+        }
     }
 
     public Map<String, UUID> call() throws Exception {
-        Map<String, UUID> uuidMap = new HashMap<String, UUID>();
+        final Map<String, UUID> uuidMap = new HashMap<String, UUID>();
+        UUIDStore store = STORE;
+
+        List<String> names = new ArrayList<>();
+        for (String name : this.names) {
+            if (!isUnknown(name)) {
+                names.add(name);
+            }
+        }
+
         int requests = (int) Math.ceil(names.size() / PROFILES_PER_REQUEST);
         for (int i = 0; i < requests; i++) {
-            HttpURLConnection connection = createConnection();
-            String body = JSONArray.toJSONString(names.subList(i * 100, Math.min((i + 1) * 100, names.size())));
-            writeBody(connection, body);
-            JSONArray array = (JSONArray) jsonParser.parse(new InputStreamReader(connection.getInputStream()));
-            for (Object profile : array) {
-                JSONObject jsonProfile = (JSONObject) profile;
-                String id = (String) jsonProfile.get("id");
-                String name = (String) jsonProfile.get("name");
-                UUID uuid = UUIDFetcher.getUUID(id);
-                uuidMap.put(name, uuid);
+            List<String> batch = names.subList(i * 100, Math.min((i + 1) * 100, names.size()));
+            final Map<String, UUID> batchMap = new HashMap<>();
+
+            Reader reader = new InputStreamReader(request(batch).getInputStream(), Charsets.UTF_8);
+            try {
+                ProfileParser.parse(reader, new ProfileParser.Handler() {
+                    @Override
+                    public void handle(String name, UUID uuid) {
+                        batchMap.put(name.toLowerCase(), uuid);
+                        uuidMap.put(name, uuid);
+                    }
+                });
+            } finally {
+                reader.close();
             }
-            if (rateLimiting && i != requests - 1) {
-                Thread.sleep(100L);
+
+            for (String name : batch) {
+                UUID uuid = batchMap.get(name.toLowerCase());
+                if (uuid == null) {
+                    markUnknown(name);
+                } else if (store != null) {
+                    store.put(name, uuid);
+                }
             }
         }
         return uuidMap;
     }
-}
\ No newline at end of file
+
+    private HttpURLConnection request(List<String> batch) throws Exception {
+        String body = JSONArray.toJSONString(batch);
+        for (int attempt = 1; ; attempt++) {
+            // The budget is shared, so every request has to wait its turn
+            REQUEST_LIMITER.acquire();
+
+            HttpURLConnection connection = createConnection(profileUrl);
+            writeBody(connection, body);
+            int responseCode = connection.getResponseCode();
+            if (responseCode == TOO_MANY_REQUESTS && attempt < MAX_ATTEMPTS) {
+                long retryAfter = connection.getHeaderFieldInt("Retry-After", -1);
+                REQUEST_LIMITER.penalise(retryAfter >= 0 ? TimeUnit.SECONDS.toMillis(retryAfter) : 1000L << attempt);
+                connection.disconnect();
+                continue;
+            }
+
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                REQUEST_LIMITER.reward();
+            }
+            return connection;
+        }
+    }
+}
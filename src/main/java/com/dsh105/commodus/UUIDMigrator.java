@@ -0,0 +1,310 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves UUIDs for very large numbers of names, such as when migrating name-keyed data to UUIDs
+ * <p>
+ * Names are read lazily from the given iterator and sent to Mojang in batches, with several batches in flight at once.
+ * Names that are already cached are reported straight away, and results are passed to a callback as each batch
+ * completes rather than being collected in memory. If a checkpoint file is given, progress is recorded as batches
+ * complete, so an interrupted migration resumes where it left off when run again with the same input.
+ * <p>
+ * Migrations block the calling thread until complete, and should never be run on the main server thread
+ */
+public class UUIDMigrator {
+
+    private static final int PROFILES_PER_REQUEST = 100;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private int concurrency = 4;
+    private File checkpointFile;
+    private String profileUrl = UUIDFetcher.PROFILE_URL;
+
+    private final Object callbackLock = new Object();
+    private final Set<String> inFlight = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Map<Integer, Long> completedBatches = new HashMap<>();
+    private int nextBatchToCommit;
+    private volatile Exception failure;
+
+    /**
+     * Receives the results of a migration
+     * <p>
+     * Calls are never made concurrently. Names that are already cached or known not to exist are reported on the
+     * thread running the migration, while names resolved from Mojang are reported from background threads
+     */
+    public interface Callback {
+
+        /**
+         * Called when a UUID is found for a name. Each distinct name is reported at least once
+         *
+         * @param name name that was resolved
+         * @param uuid UUID of the given name
+         */
+        void onResolved(String name, UUID uuid);
+
+        /**
+         * Called when Mojang has no profile for a name
+         *
+         * @param name name that could not be resolved
+         */
+        void onUnresolved(String name);
+    }
+
+    /**
+     * Sets the maximum number of batches that may be in flight at once. Requests are still subject to the rate limit
+     * shared by all UUIDFetchers
+     *
+     * @param concurrency maximum number of concurrent batches
+     * @return this migrator
+     */
+    public UUIDMigrator withConcurrency(int concurrency) {
+        Affirm.isTrue(concurrency > 0, "Concurrency must be positive");
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets the file used to record progress. The file is removed once a migration completes
+     *
+     * @param checkpointFile file to record progress in
+     * @return this migrator
+     */
+    public UUIDMigrator withCheckpoint(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+        return this;
+    }
+
+    // Sends requests somewhere other than Mojang, for testing
+    UUIDMigrator withProfileUrl(String profileUrl) {
+        this.profileUrl = profileUrl;
+        return this;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Migrates the given names
+     *
+     * @param names    names to resolve
+     * @param callback callback to report results to
+     * @throws Exception if a batch repeatedly failed. Progress up to the failed batch is kept in the checkpoint file
+     */
+    public void migrate(Iterable<String> names, Callback callback) throws Exception {
+        migrate(names.iterator(), callback);
+    }
+
+    /**
+     * Migrates the names provided by the given iterator
+     *
+     * @param names    names to resolve
+     * @param callback callback to report results to
+     * @throws Exception if a batch repeatedly failed. Progress up to the failed batch is kept in the checkpoint file
+     */
+    public synchronized void migrate(Iterator<String> names, final Callback callback) throws Exception {
+        inFlight.clear();
+        completedBatches.clear();
+        nextBatchToCommit = 0;
+        failure = null;
+
+        long position = 0;
+        long resumeFrom = readCheckpoint();
+        while (position < resumeFrom && names.hasNext()) {
+            names.next();
+            position++;
+        }
+
+        final Semaphore permits = new Semaphore(concurrency);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setNameFormat("Commodus UUIDMigrator #%d").setDaemon(true).build());
+        try {
+            int batchIndex = 0;
+            List<String> batch = new ArrayList<>(PROFILES_PER_REQUEST);
+            while (names.hasNext() && failure == null) {
+                String name = names.next();
+                position++;
+
+                UUID cached = UUIDFetcher.getCache().asMap().get(name);
+                if (cached == null) {
+                    UUIDStore store = UUIDFetcher.getStore();
+                    cached = store == null ? null : store.get(name);
+                }
+                if (cached != null) {
+                    synchronized (callbackLock) {
+                        callback.onResolved(name, cached);
+                    }
+                    continue;
+                }
+                if (UUIDFetcher.isUnknown(name)) {
+                    synchronized (callbackLock) {
+                        callback.onUnresolved(name);
+                    }
+                    continue;
+                }
+                if (!inFlight.add(name.toLowerCase())) {
+                    // Will be reported by the batch it's already part of
+                    continue;
+                }
+
+                batch.add(name);
+                if (batch.size() >= PROFILES_PER_REQUEST) {
+                    permits.acquire();
+                    submit(executor, permits, batch, batchIndex++, position, callback);
+                    batch = new ArrayList<>(PROFILES_PER_REQUEST);
+                }
+            }
+
+            if (!batch.isEmpty() && failure == null) {
+                permits.acquire();
+                submit(executor, permits, batch, batchIndex, position, callback);
+            }
+
+            // Wait for everything in flight
+            permits.acquire(concurrency);
+            permits.release(concurrency);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+        if (checkpointFile != null) {
+            checkpointFile.delete();
+        }
+    }
+
+    private void submit(ExecutorService executor, final Semaphore permits, final List<String> batch, final int batchIndex, final long endPosition, final Callback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resolve(batch, callback);
+                    commit(batchIndex, endPosition);
+                } catch (Exception e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                } finally {
+                    for (String name : batch) {
+                        inFlight.remove(name.toLowerCase());
+                    }
+                    permits.release();
+                }
+            }
+        });
+    }
+
+    private void resolve(List<String> batch, Callback callback) throws Exception {
+        Map<String, UUID> resolved = null;
+        for (int attempt = 1; resolved == null; attempt++) {
+            try {
+                resolved = new UUIDFetcher(batch, true, profileUrl).call();
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+
+        Map<String, UUID> uuidMap = new HashMap<>();
+        for (Map.Entry<String, UUID> entry : resolved.entrySet()) {
+            uuidMap.put(entry.getKey().toLowerCase(), entry.getValue());
+        }
+
+        synchronized (callbackLock) {
+            for (String name : batch) {
+                UUID uuid = uuidMap.get(name.toLowerCase());
+                if (uuid != null) {
+                    UUIDFetcher.getCache().asMap().put(name, uuid);
+                    callback.onResolved(name, uuid);
+                } else {
+                    callback.onUnresolved(name);
+                }
+            }
+        }
+    }
+
+    // Batches may complete out of order, so only record progress once every earlier batch is done too
+    private void commit(int batchIndex, long endPosition) throws IOException {
+        synchronized (completedBatches) {
+            completedBatches.put(batchIndex, endPosition);
+            Long checkpoint = null;
+            while (completedBatches.containsKey(nextBatchToCommit)) {
+                checkpoint = completedBatches.remove(nextBatchToCommit++);
+            }
+            if (checkpoint != null && failure == null) {
+                writeCheckpoint(checkpoint);
+            }
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (checkpointFile == null || !checkpointFile.exists()) {
+            return 0;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpointFile), Charsets.UTF_8));
+        try {
+            String line = reader.readLine();
+            return line == null ? 0 : Long.parseLong(line.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid migration checkpoint: " + checkpointFile, e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeCheckpoint(long position) throws IOException {
+        if (checkpointFile == null) {
+            return;
+        }
+        File tempFile = new File(checkpointFile.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), Charsets.UTF_8);
+        try {
+            writer.write(String.valueOf(position));
+        } finally {
+            writer.close();
+        }
+        try {
+            Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent store of name to UUID mappings, kept as an append-only binary log
+ * <p>
+ * Each record holds a name, the 16 byte UUID layout used by {@link com.dsh105.commodus.UUIDFetcher#toBytes(java.util.UUID)}
+ * and the time the mapping was resolved. Later records replace earlier ones, and the log is rewritten in the background
+ * once it holds too many stale records.
+ */
+public class UUIDStore {
+
+    private static final int MAGIC = 0x55554944;
+    private static final byte FORMAT_VERSION = 1;
+    private static final int MIN_COMPACTION_RECORDS = 1024;
+
+    private static final ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Commodus UUIDStore").setDaemon(true).build());
+
+    private final File file;
+    private final long maxAge;
+    private final ConcurrentMap<String, Record> records = new ConcurrentHashMap<>();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    private DataOutputStream output;
+    private int loggedRecords;
+    // Set once closed, so that a compaction queued beforehand doesn't reopen the file
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new store backed by the given file, keeping mappings for up to 30 days
+     *
+     * @param file file to store mappings in
+     */
+    public UUIDStore(File file) {
+        this(file, TimeUnit.DAYS.toMillis(30));
+    }
+
+    /**
+     * Constructs a new store backed by the given file
+     *
+     * @param file   file to store mappings in
+     * @param maxAge time (in milliseconds) after which a stored mapping is no longer trusted
+     */
+    public UUIDStore(File file, long maxAge) {
+        this.file = file;
+        this.maxAge = maxAge;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Reads all mappings from the backing file and prepares it for further writes
+     *
+     * @return the number of mappings loaded
+     * @throws IOException if the file could not be read or written
+     */
+    public synchronized int load() throws IOException {
+        closed = false;
+        records.clear();
+        loggedRecords = 0;
+        boolean rewrite = false;
+
+        if (file.exists() && file.length() > 0) {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (input.readInt() != MAGIC || input.readByte() != FORMAT_VERSION) {
+                    throw new IOException("Unrecognised UUID store format: " + file);
+                }
+                byte[] uuidBytes = new byte[16];
+                while (true) {
+                    // Only a log ending exactly on a record boundary is complete
+                    input.mark(1);
+                    if (input.read() == -1) {
+                        break;
+                    }
+                    input.reset();
+                    try {
+                        String name = input.readUTF();
+                        input.readFully(uuidBytes);
+                        long time = input.readLong();
+                        loggedRecords++;
+                        if (!isExpired(time)) {
+                            records.put(name.toLowerCase(), new Record(name, UUIDFetcher.fromBytes(uuidBytes), time));
+                        }
+                    } catch (EOFException | UTFDataFormatException e) {
+                        // Partially written record - rewrite the log so that new records aren't appended after it
+                        rewrite = true;
+                        break;
+                    }
+                }
+            } finally {
+                input.close();
+            }
+        }
+
+        if (rewrite || requiresCompaction()) {
+            compact();
+        } else {
+            openOutput();
+        }
+        return records.size();
+    }
+
+    /**
+     * Returns the UUID stored for the given name
+     *
+     * @param name name to look up
+     * @return the stored UUID, or null if no mapping exists or it has expired
+     */
+    public UUID get(String name) {
+        Record record = records.get(name.toLowerCase());
+        if (record == null || isExpired(record.time)) {
+            return null;
+        }
+        return record.uuid;
+    }
+
+    /**
+     * Returns all mappings currently held by this store that have not expired
+     *
+     * @return a map of names to UUIDs
+     */
+    public Map<String, UUID> getMappings() {
+        Map<String, UUID> mappings = new HashMap<>();
+        for (Record record : records.values()) {
+            if (!isExpired(record.time)) {
+                mappings.put(record.name, record.uuid);
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Stores a mapping, appending it to the backing file. Once this store has been closed, the mapping is only held in
+     * memory
+     *
+     * @param name name to store a UUID for
+     * @param uuid UUID of the given name
+     */
+    public void put(String name, UUID uuid) {
+        long time = System.currentTimeMillis();
+        Record existing = records.get(name.toLowerCase());
+        if (existing != null && existing.name.equals(name) && existing.uuid.equals(uuid) && time - existing.time < maxAge / 2) {
+            // Nothing new to write
+            return;
+        }
+
+        Record record = new Record(name, uuid, time);
+        synchronized (this) {
+            records.put(name.toLowerCase(), record);
+            if (closed) {
+                return;
+            }
+            if (output != null) {
+                try {
+                    write(output, record);
+                    output.flush();
+                    loggedRecords++;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        if (requiresCompaction() && compactionScheduled.compareAndSet(false, true)) {
+            COMPACTION_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compactionScheduled.set(false);
+                    if (closed) {
+                        return;
+                    }
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Rewrites the backing file so that it only contains the latest, unexpired record for each name. Does nothing once
+     * this store has been closed
+     *
+     * @throws IOException if the file could not be written
+     */
+    public synchronized void compact() throws IOException {
+        if (closed) {
+            return;
+        }
+        closeOutput();
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        File parent = tempFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        int written = 0;
+        DataOutputStream tempOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            writeHeader(tempOutput);
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                if (isExpired(entry.getValue().time)) {
+                    records.remove(entry.getKey());
+                    continue;
+                }
+                write(tempOutput, entry.getValue());
+                written++;
+            }
+        } finally {
+            tempOutput.close();
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        loggedRecords = written;
+        openOutput();
+    }
+
+    /**
+     * Closes the backing file. Mappings are kept in memory, but no longer persisted until the store is loaded again
+     */
+    public synchronized void close() {
+        closed = true;
+        try {
+            closeOutput();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean isExpired(long time) {
+        return System.currentTimeMillis() - time > maxAge;
+    }
+
+    private boolean requiresCompaction() {
+        return loggedRecords > MIN_COMPACTION_RECORDS && loggedRecords > records.size() * 2;
+    }
+
+    private void openOutput() throws IOException {
+        boolean newFile = !file.exists() || file.length() == 0;
+        if (newFile) {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+        }
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (newFile) {
+            writeHeader(output);
+            output.flush();
+        }
+    }
+
+    private void closeOutput() throws IOException {
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+    }
+
+    private static void writeHeader(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeByte(FORMAT_VERSION);
+    }
+
+    private static void write(DataOutputStream output, Record record) throws IOException {
+        output.writeUTF(record.name);
+        output.write(UUIDFetcher.toBytes(record.uuid));
+        output.writeLong(record.time);
+    }
+
+    private static class Record {
+
+        private final String name;
+        private final UUID uuid;
+        private final long time;
+
+        private Record(String name, UUID uuid, long time) {
+            this.name = name;
+            this.uuid = uuid;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * An option holding a boolean, read from a cache
+ * <p>
+ * Values are held boxed, which for booleans costs nothing. Values locked to null in an
+ * {@link com.dsh105.commodus.config.Options} are ignored
+ */
+public class BooleanOption extends CompiledOption<Boolean> {
+
+    public BooleanOption(FileConfiguration configuration, String path, String... comments) {
+        super(configuration, path, comments);
+    }
+
+    public BooleanOption(FileConfiguration configuration, String path, boolean defaultValue, String... comments) {
+        super(configuration, path, defaultValue, comments);
+    }
+
+    public boolean getBoolean(YAMLConfig config) {
+        return getCached(config);
+    }
+
+    public boolean getBoolean(YAMLConfig config, String replacement) {
+        return getCached(config, replacement);
+    }
+
+    public boolean getBoolean(YAMLConfig config, String... replacements) {
+        return getCached(config, replacements);
+    }
+
+    public boolean getBoolean(Options options, String... replacements) {
+        if (options.isLocked(this, replacements)) {
+            Boolean locked = options.getLockedValue(this);
+            if (locked != null) {
+                return locked;
+            }
+        }
+        return getCached(options.getConfig(), replacements);
+    }
+
+    @Override
+    protected Boolean convert(Object value) {
+        return value instanceof Boolean ? (Boolean) value : null;
+    }
+
+    @Override
+    protected Boolean getFallbackValue() {
+        return false;
+    }
+}
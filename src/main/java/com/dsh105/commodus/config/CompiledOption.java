@@ -0,0 +1,197 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An option whose values are cached for each config and set of path replacements, so that repeated reads don't
+ * resolve the path or look it up in the config again
+ * <p>
+ * Cached values are discarded whenever the {@link com.dsh105.commodus.config.YAMLConfig#getRevision() revision} of the
+ * config they were read from changes, i.e. when it is set or reloaded. Values are converted to the option's type when
+ * first read, falling back to the option's default if they are missing or of the wrong type. Once more than {@link
+ * #MAX_CACHED_VALUES} sets of replacements are cached for a config, or values are cached for more than that many
+ * configs, they are all discarded and cached again as they are read.
+ *
+ * @param <T> type of value held by the option
+ */
+public abstract class CompiledOption<T> extends Option<T> {
+
+    public static final int MAX_CACHED_VALUES = 256;
+
+    // Stands in for null values and replacements, which can't be cached
+    private static final Object NO_VALUE = new Object();
+
+    private final ConcurrentMap<YAMLConfig, Values> caches = new ConcurrentHashMap<>();
+    // Values of the config last read from, which is usually the only one
+    private volatile Values last;
+
+    public CompiledOption(FileConfiguration configuration, String path, String... comments) {
+        super(configuration, path, comments);
+    }
+
+    public CompiledOption(FileConfiguration configuration, String path, T defaultValue, String... comments) {
+        super(configuration, path, defaultValue, comments);
+    }
+
+    /**
+     * Converts a value read from a config into this option's type
+     *
+     * @param value value read from the config, or null if there was none
+     * @return converted value, or null if the value can't be converted
+     */
+    protected abstract T convert(Object value);
+
+    /**
+     * Gets the value used when a config doesn't hold a valid value and this option has no default
+     *
+     * @return fallback value
+     */
+    protected abstract T getFallbackValue();
+
+    /**
+     * Gets the value of this option, from the cache where possible
+     *
+     * @param config config to read from
+     * @return value of this option
+     */
+    protected T getCached(YAMLConfig config) {
+        Values values = getValues(config);
+        Object value = values.value;
+        if (value == null) {
+            value = mask(read(config));
+            values.value = value;
+        }
+        return unmask(value);
+    }
+
+    /**
+     * Gets the value of this option for a single path replacement, from the cache where possible
+     *
+     * @param config      config to read from
+     * @param replacement path replacement
+     * @return value of this option
+     */
+    protected T getCached(YAMLConfig config, String replacement) {
+        Values values = getValues(config);
+        Object key = mask(replacement);
+        Object value = values.get(key);
+        if (value == null) {
+            value = values.put(key, mask(read(config, replacement)));
+        }
+        return unmask(value);
+    }
+
+    /**
+     * Gets the value of this option for the given path replacements, from the cache where possible
+     *
+     * @param config       config to read from
+     * @param replacements path replacements
+     * @return value of this option
+     */
+    protected T getCached(YAMLConfig config, String... replacements) {
+        switch (replacements.length) {
+            case 0:
+                return getCached(config);
+            case 1:
+                return getCached(config, replacements[0]);
+        }
+        Values values = getValues(config);
+        Object value = values.get(Arrays.asList(replacements));
+        if (value == null) {
+            // The key would otherwise be backed by the caller's array
+            value = values.put(Arrays.asList(replacements.clone()), mask(read(config, replacements)));
+        }
+        return unmask(value);
+    }
+
+    /**
+     * Discards every cached value of this option
+     */
+    public void invalidate() {
+        caches.clear();
+        last = null;
+    }
+
+    private Values getValues(YAMLConfig config) {
+        // Read before the values are, so that values read as the config changes are discarded next time
+        int revision = config.getRevision();
+        Values values = last;
+        if (values != null && values.config == config && values.revision == revision) {
+            return values;
+        }
+        values = caches.get(config);
+        if (values == null || values.revision != revision) {
+            if (caches.size() >= MAX_CACHED_VALUES) {
+                caches.clear();
+            }
+            values = new Values(config, revision);
+            caches.put(config, values);
+        }
+        last = values;
+        return values;
+    }
+
+    private T read(YAMLConfig config, String... replacements) {
+        T value = convert(config.get(getPath(replacements)));
+        if (value == null) {
+            value = getDefaultValue() != null ? getDefaultValue() : getFallbackValue();
+        }
+        return value;
+    }
+
+    private static Object mask(Object value) {
+        return value == null ? NO_VALUE : value;
+    }
+
+    private T unmask(Object value) {
+        return value == NO_VALUE ? null : (T) value;
+    }
+
+    private static final class Values {
+
+        private final YAMLConfig config;
+        private final int revision;
+        // Value read without replacements, kept apart so that reading it needs no key
+        private volatile Object value;
+        // Keyed by the replacement itself when there is only one, otherwise by a list of them
+        private final ConcurrentMap<Object, Object> values = new ConcurrentHashMap<>();
+
+        private Values(YAMLConfig config, int revision) {
+            this.config = config;
+            this.revision = revision;
+        }
+
+        private Object get(Object key) {
+            return values.get(key);
+        }
+
+        private Object put(Object key, Object value) {
+            if (values.size() >= MAX_CACHED_VALUES) {
+                values.clear();
+            }
+            values.put(key, value);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Comments of a YAML configuration, held alongside its values rather than inside them
+ * <p>
+ * Comments are attached to the path of the key that follows them. Comments before the first key that are separated
+ * from it by a blank line form the header, and comments after the last key form the footer. Each comment line is held
+ * as the text following its {@code #}.
+ */
+public class ConfigComments {
+
+    private final List<String> header = new ArrayList<>();
+    private final Map<String, List<String>> comments = new HashMap<>();
+    private final List<String> footer = new ArrayList<>();
+
+    public List<String> getHeader() {
+        return header;
+    }
+
+    public List<String> getFooter() {
+        return footer;
+    }
+
+    /**
+     * Gets the comments attached to the given path
+     *
+     * @param path path to get comments for
+     * @return comments attached to the given path, or an empty list if there are none
+     */
+    public List<String> getComments(String path) {
+        List<String> lines = comments.get(path);
+        return lines == null ? Collections.<String>emptyList() : Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Attaches comments to the given path, replacing any it already had
+     *
+     * @param path  path to attach comments to
+     * @param lines comment lines, each being the text following its {@code #}. If empty, the path's comments are removed
+     */
+    public void setComments(String path, String... lines) {
+        if (lines.length == 0) {
+            comments.remove(path);
+        } else {
+            comments.put(path, new ArrayList<>(Arrays.asList(lines)));
+        }
+    }
+
+    public boolean hasComments(String path) {
+        return comments.containsKey(path);
+    }
+
+    public void clear() {
+        header.clear();
+        comments.clear();
+        footer.clear();
+    }
+
+    /**
+     * Reads a YAML document in a single pass, splitting it into its comments and its content
+     *
+     * @param reader  reader to read the document from. Not closed once reading is complete
+     * @param content builder to append the document to, without its comment lines
+     * @return comments of the document
+     * @throws IOException if the reader fails
+     */
+    public static ConfigComments read(Reader reader, StringBuilder content) throws IOException {
+        ConfigComments result = new ConfigComments();
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        PathTracker tracker = new PathTracker();
+        List<String> pending = new ArrayList<>();
+        boolean seenKey = false;
+
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int start = indentOf(line);
+            if (start == line.length()) {
+                // Leading comments set apart from the first key make up the header
+                if (!seenKey && result.header.isEmpty() && !pending.isEmpty()) {
+                    result.header.addAll(pending);
+                    pending.clear();
+                }
+                content.append('\n');
+                continue;
+            }
+            if (line.charAt(start) == '#' && !tracker.isSkipping(start)) {
+                pending.add(line.substring(start + 1));
+                // Keep line numbers intact for any parser errors
+                content.append('\n');
+                continue;
+            }
+
+            content.append(line).append('\n');
+            String path = tracker.next(line, start);
+            if (path != null) {
+                seenKey = true;
+                if (!pending.isEmpty()) {
+                    result.comments.put(path, new ArrayList<>(pending));
+                    pending.clear();
+                }
+            }
+        }
+        // A document holding nothing but comments only has a header
+        (seenKey ? result.footer : result.header).addAll(pending);
+        return result;
+    }
+
+    /**
+     * Converts a document from the format used before comments were held separately, in which each top-level comment
+     * was stored as a {@code <prefix><n>} key. Those keys are removed from the given section
+     *
+     * @param section section to convert
+     * @param prefix  prefix of the comment keys
+     * @return comments of the section
+     */
+    public static ConfigComments fromLegacyKeys(ConfigurationSection section, String prefix) {
+        ConfigComments result = new ConfigComments();
+        List<String> pending = new ArrayList<>();
+        for (String key : section.getKeys(false)) {
+            if (key.startsWith(prefix)) {
+                Object comment = section.get(key);
+                pending.add(comment == null ? "" : " " + comment);
+                section.set(key, null);
+            } else if (!pending.isEmpty()) {
+                result.comments.put(key, new ArrayList<>(pending));
+                pending.clear();
+            }
+        }
+        result.footer.addAll(pending);
+        return result;
+    }
+
+    /**
+     * Inserts these comments into the given YAML document
+     *
+     * @param document document to insert comments into, such as the output of
+     *                 {@link org.bukkit.configuration.file.FileConfiguration#saveToString()}
+     * @return the document with its comments
+     */
+    public String apply(String document) {
+        StringBuilder result = new StringBuilder(document.length() + 64 * (comments.size() + 1));
+        if (!header.isEmpty()) {
+            appendComments(result, header, 0);
+            result.append('\n');
+        }
+
+        PathTracker tracker = new PathTracker();
+        boolean afterKey = false;
+        int lastIndent = 0;
+        int from = 0;
+        int length = document.length();
+        while (from < length) {
+            int end = document.indexOf('\n', from);
+            if (end < 0) {
+                end = length;
+            }
+            String line = document.substring(from, end);
+            from = end + 1;
+
+            int start = indentOf(line);
+            if (start == line.length()) {
+                result.append('\n');
+                afterKey = false;
+                continue;
+            }
+            if (line.charAt(start) != '#') {
+                String path = tracker.next(line, start);
+                List<String> lines = path == null ? null : comments.get(path);
+                if (lines != null) {
+                    // Set comments apart from the previous entry, but not from their parent
+                    if (afterKey && lastIndent >= start) {
+                        result.append('\n');
+                    }
+                    appendComments(result, lines, start);
+                }
+            }
+            result.append(line).append('\n');
+            afterKey = true;
+            lastIndent = start;
+        }
+
+        if (!footer.isEmpty()) {
+            if (afterKey) {
+                result.append('\n');
+            }
+            appendComments(result, footer, 0);
+        }
+        return result.toString();
+    }
+
+    private static void appendComments(StringBuilder builder, List<String> lines, int indent) {
+        for (String line : lines) {
+            for (int i = 0; i < indent; i++) {
+                builder.append(' ');
+            }
+            builder.append('#').append(line).append('\n');
+        }
+    }
+
+    private static int indentOf(String line) {
+        int indent = 0;
+        while (indent < line.length() && Character.isWhitespace(line.charAt(indent))) {
+            indent++;
+        }
+        return indent;
+    }
+
+    /**
+     * Follows the path of each key in a block-style YAML document, using the indentation of each line
+     */
+    static class PathTracker {
+
+        private int[] indents = new int[8];
+        private String[] keys = new String[8];
+        private int depth;
+
+        // Lines indented further than this belong to a list or block scalar, so can't start a key
+        private int skipIndent = -1;
+
+        boolean isSkipping(int indent) {
+            return skipIndent >= 0 && indent > skipIndent;
+        }
+
+        /**
+         * Moves on to the given line
+         *
+         * @param line   non-blank line to move to
+         * @param indent indentation of the line
+         * @return full path of the key on the given line, or null if it doesn't start a key
+         */
+        String next(String line, int indent) {
+            if (isSkipping(indent)) {
+                return null;
+            }
+            skipIndent = -1;
+
+            char first = line.charAt(indent);
+            if (first == '-' && (indent + 1 == line.length() || line.charAt(indent + 1) == ' ')) {
+                skipIndent = indent;
+                return null;
+            }
+
+            String key;
+            int valueStart;
+            if (first == '\'' || first == '"') {
+                int close = line.indexOf(first, indent + 1);
+                if (close < 0 || close + 1 >= line.length() || line.charAt(close + 1) != ':') {
+                    return null;
+                }
+                key = line.substring(indent + 1, close);
+                valueStart = close + 2;
+            } else {
+                int colon = line.indexOf(": ", indent);
+                if (colon < 0) {
+                    if (line.charAt(line.length() - 1) != ':') {
+                        return null;
+                    }
+                    colon = line.length() - 1;
+                }
+                key = line.substring(indent, colon);
+                valueStart = colon + 1;
+            }
+
+            while (depth > 0 && indents[depth - 1] >= indent) {
+                depth--;
+            }
+            if (depth == indents.length) {
+                indents = Arrays.copyOf(indents, depth * 2);
+                keys = Arrays.copyOf(keys, depth * 2);
+            }
+            indents[depth] = indent;
+            keys[depth++] = key;
+
+            while (valueStart < line.length() && line.charAt(valueStart) == ' ') {
+                valueStart++;
+            }
+            if (valueStart < line.length() && (line.charAt(valueStart) == '|' || line.charAt(valueStart) == '>')) {
+                skipIndent = indent;
+            }
+
+            if (depth == 1) {
+                return key;
+            }
+            StringBuilder path = new StringBuilder(keys[0]);
+            for (int i = 1; i < depth; i++) {
+                path.append('.').append(keys[i]);
+            }
+            return path.toString();
+        }
+    }
+}
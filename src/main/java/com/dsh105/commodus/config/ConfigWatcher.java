@@ -0,0 +1,278 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import com.google.common.base.Charsets;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads configs when their files are changed
+ * <p>
+ * Changed files are read and parsed on a background thread. The new values are then swapped in on the main server
+ * thread, and the config's {@link com.dsh105.commodus.config.YAMLConfig.ReloadListener}s are told which paths changed.
+ * Any changes to a config that haven't been saved when its file is changed are lost. Files written by the config itself
+ * are recognised and not reloaded.
+ * <p>
+ * Configs created by a {@link com.dsh105.commodus.config.YAMLConfigManager} are watched automatically once it has been
+ * given a watcher with {@link com.dsh105.commodus.config.YAMLConfigManager#setWatcher(ConfigWatcher)}
+ */
+public class ConfigWatcher {
+
+    // Editors often write a file in several steps, so wait for things to settle before reading it
+    private static final long SETTLE_TIME = 100L;
+
+    private final Plugin plugin;
+    private final WatchService watchService;
+    private final Map<File, YAMLConfig> configs = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> directories = new ConcurrentHashMap<>();
+    // Hashes of what each file is known to contain, whether written by us or already reloaded
+    private final Map<File, Integer> knownContent = new ConcurrentHashMap<>();
+
+    private Listener listener;
+    private volatile boolean closed;
+
+    /**
+     * Starts a new watcher. It is closed automatically when the given plugin is disabled
+     *
+     * @param plugin plugin to swap in reloaded configs with
+     * @throws IOException if the file system can't be watched
+     */
+    public ConfigWatcher(final Plugin plugin) throws IOException {
+        this(plugin, FileSystems.getDefault().newWatchService());
+
+        this.listener = new Listener() {
+            @EventHandler
+            public void onDisable(PluginDisableEvent event) {
+                if (event.getPlugin() == plugin) {
+                    close();
+                }
+            }
+        };
+        Bukkit.getPluginManager().registerEvents(listener, plugin);
+    }
+
+    // Doesn't close itself when the plugin is disabled
+    ConfigWatcher(Plugin plugin, WatchService watchService) {
+        this.plugin = plugin;
+        this.watchService = watchService;
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "Commodus ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts watching the file of the given config
+     *
+     * @param config config to reload when its file changes
+     * @throws IOException if the config's directory can't be watched
+     */
+    public synchronized void watch(YAMLConfig config) throws IOException {
+        File file = config.getFile().getAbsoluteFile();
+        Path directory = file.getParentFile().toPath();
+        if (!directories.containsKey(directory)) {
+            directories.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+        }
+        configs.put(file, config);
+    }
+
+    /**
+     * Stops watching the file of the given config
+     *
+     * @param config config to stop reloading
+     */
+    public synchronized void unwatch(YAMLConfig config) {
+        File file = config.getFile().getAbsoluteFile();
+        if (configs.get(file) != config) {
+            return;
+        }
+        configs.remove(file);
+        knownContent.remove(file);
+
+        Path directory = file.getParentFile().toPath();
+        for (File other : configs.keySet()) {
+            if (other.getParentFile().toPath().equals(directory)) {
+                return;
+            }
+        }
+        WatchKey key = directories.remove(directory);
+        if (key != null) {
+            key.cancel();
+        }
+    }
+
+    public boolean isWatching(YAMLConfig config) {
+        return configs.get(config.getFile().getAbsoluteFile()) == config;
+    }
+
+    /**
+     * Stops this watcher. Configs are no longer reloaded once it has been closed
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (listener != null) {
+            HandlerList.unregisterAll(listener);
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        configs.clear();
+        directories.clear();
+        knownContent.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Records content about to be written to a file by its own config, so that the change isn't reloaded
+     *
+     * @param file    file being written
+     * @param content content being written
+     */
+    void expect(File file, String content) {
+        knownContent.put(file.getAbsoluteFile(), content.hashCode());
+    }
+
+    private void watch() {
+        while (!closed) {
+            Set<File> changed = new HashSet<>();
+            try {
+                WatchKey key = watchService.take();
+                do {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // Events were lost, so check everything in the directory
+                            for (File file : configs.keySet()) {
+                                if (file.getParentFile().toPath().equals(directory)) {
+                                    changed.add(file);
+                                }
+                            }
+                            continue;
+                        }
+                        File file = directory.resolve((Path) event.context()).toFile();
+                        if (configs.containsKey(file)) {
+                            changed.add(file);
+                        }
+                    }
+                    key.reset();
+                } while ((key = watchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            for (File file : changed) {
+                reload(file);
+            }
+        }
+    }
+
+    private void reload(File file) {
+        final YAMLConfig config = configs.get(file);
+        if (config == null) {
+            return;
+        }
+        String text = readChange(config);
+        if (text == null) {
+            return;
+        }
+
+        final YamlConfiguration values = new YamlConfiguration();
+        final ConfigComments comments;
+        try {
+            StringBuilder content = new StringBuilder(text.length());
+            comments = ConfigComments.read(new StringReader(text), content);
+            values.loadFromString(content.toString());
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().warning("Failed to reload " + file.getName() + ": " + e.getMessage());
+            return;
+        }
+
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        Bukkit.getScheduler().runTask(plugin, new Runnable() {
+            @Override
+            public void run() {
+                if (!closed && configs.get(config.getFile().getAbsoluteFile()) == config) {
+                    config.swap(values, comments);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the file of a config, unless it holds nothing new: i.e. it was written by the config itself, has already
+     * been reloaded, or is about to be overwritten by a save still waiting to be written
+     *
+     * @param config config to read the file of
+     * @return content of the file, or null if it doesn't need reloading
+     */
+    String readChange(YAMLConfig config) {
+        File file = config.getFile().getAbsoluteFile();
+        ConfigWriter writer = config.getManager().getWriter();
+        if (writer != null && writer.isPending(file)) {
+            // About to be overwritten by the config anyway
+            return null;
+        }
+
+        String text;
+        try {
+            text = new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        Integer known = knownContent.put(file, text.hashCode());
+        if (known != null && known == text.hashCode()) {
+            return null;
+        }
+        return text;
+    }
+}
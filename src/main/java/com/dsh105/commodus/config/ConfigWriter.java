@@ -0,0 +1,256 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import com.dsh105.commodus.Affirm;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes config files in the background
+ * <p>
+ * Repeated writes of the same file within the debounce window are coalesced, so only the latest content is written.
+ * Each file is written to a temporary file first and then moved over the original, so a crash never leaves a file
+ * half-written. Pending writes should be flushed with {@link #shutdown()} when the owning plugin is disabled.
+ */
+public class ConfigWriter {
+
+    public static final long DEFAULT_DEBOUNCE = 1000L;
+
+    private static final AtomicLong TEMP_FILE_COUNTER = new AtomicLong();
+
+    // Keyed by absolute file, so the same file is recognised however its path was given
+    private final Map<File, String> pending = new ConcurrentHashMap<>();
+    // Held while writing, so that writes made on other threads once shut down are still made one at a time, in order
+    private final Object writeLock = new Object();
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().setNameFormat("Commodus ConfigWriter #%d").setDaemon(true).build());
+
+    private long debounce = DEFAULT_DEBOUNCE;
+    private Listener listener;
+
+    public ConfigWriter() {
+        // Pending writes are flushed on shutdown instead
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Sets how long writes wait for further writes of the same file before being made
+     *
+     * @param debounce debounce window, in milliseconds
+     * @return this writer
+     */
+    public ConfigWriter withDebounce(long debounce) {
+        Affirm.isTrue(debounce >= 0, "Debounce cannot be negative");
+        this.debounce = debounce;
+        return this;
+    }
+
+    public long getDebounce() {
+        return debounce;
+    }
+
+    /**
+     * Flushes and shuts down this writer when the given plugin is disabled
+     *
+     * @param plugin plugin that owns this writer
+     * @return this writer
+     */
+    public synchronized ConfigWriter flushOnDisable(final Plugin plugin) {
+        if (listener == null) {
+            listener = new Listener() {
+                @EventHandler
+                public void onDisable(PluginDisableEvent event) {
+                    if (event.getPlugin() == plugin) {
+                        shutdown();
+                    }
+                }
+            };
+            Bukkit.getPluginManager().registerEvents(listener, plugin);
+        }
+        return this;
+    }
+
+    /**
+     * Queues a file to be written. If the file is already queued, its content is replaced
+     *
+     * @param file    file to write
+     * @param content content to write
+     */
+    public void write(File file, String content) {
+        final File key = file.getAbsoluteFile();
+        if (pending.put(key, content) != null) {
+            // Already scheduled
+            return;
+        }
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    writePending(key);
+                }
+            }, debounce, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down, so write it straight away
+            writePending(key);
+        }
+    }
+
+    public boolean isPending(File file) {
+        return pending.containsKey(file.getAbsoluteFile());
+    }
+
+    /**
+     * Writes the given file now if it is queued, waiting until it has been written
+     *
+     * @param file file to flush
+     */
+    public void flush(File file) {
+        final File key = file.getAbsoluteFile();
+        if (pending.containsKey(key)) {
+            await(new Runnable() {
+                @Override
+                public void run() {
+                    writePending(key);
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes every queued file now, waiting until they have all been written
+     */
+    public void flush() {
+        if (!pending.isEmpty()) {
+            await(new Runnable() {
+                @Override
+                public void run() {
+                    for (File file : pending.keySet()) {
+                        writePending(file);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes every queued file and stops this writer. Any later writes are made straight away on the calling thread
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (listener != null) {
+                HandlerList.unregisterAll(listener);
+                listener = null;
+            }
+        }
+        flush();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Catch anything queued while shutting down
+        for (File file : pending.keySet()) {
+            writePending(file);
+        }
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    // Writes are made on the writer thread where possible, so that they are never made out of order
+    private void await(Runnable task) {
+        Future<?> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+            return;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writePending(File file) {
+        synchronized (writeLock) {
+            String content = pending.remove(file);
+            if (content != null) {
+                try {
+                    writeAtomically(file, content);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a file by writing to a temporary file and then moving it over the original. Each call uses its own
+     * temporary file, so concurrent writes of the same file never mix their content
+     *
+     * @param file    file to write
+     * @param content content to write
+     * @throws IOException if the file could not be written
+     */
+    public static void writeAtomically(File file, String content) throws IOException {
+        File tempFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + "." + TEMP_FILE_COUNTER.incrementAndGet() + ".tmp");
+        boolean moved = false;
+        try {
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8));
+                writer.write(content);
+                writer.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) {
+                tempFile.delete();
+            }
+        }
+    }
+}
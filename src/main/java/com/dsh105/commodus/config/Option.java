@@ -34,10 +34,12 @@ public class Option<T> {
     private String path;
     private T defaultValue;
     private String[] comments;
+    private PathTemplate template;
 
     public Option(FileConfiguration configuration, String path, String... comments) {
         this.config = configuration;
         this.path = path;
+        this.template = PathTemplate.compile(path);
 
         ArrayList<String> commentsList = new ArrayList<>();
         for (String comment : comments) {
@@ -68,11 +70,7 @@ public class Option<T> {
     }
 
     public String getPath(String... replacements) {
-        String path = String.format(getPath(), replacements);
-        while (path.endsWith(".")) {
-            path = path.substring(0, path.length() - 2);
-        }
-        return path;
+        return template.resolve((Object[]) replacements);
     }
 
     public T getValue(Options options, Object... replacements) {
@@ -92,11 +90,8 @@ public class Option<T> {
 
     public T getValue(FileConfiguration configuration, T defaultValue, String... replacements) {
         String path = getPath(replacements);
-        if (path.contains("%s")) {
-            throw new IllegalArgumentException("Not enough path arguments provided");
-        }
         if (configuration != null) {
-            Object result = configuration.get(getPath(replacements));
+            Object result = configuration.get(path);
             if (result != null) {
                 try {
                     return (T) result;
@@ -115,7 +110,7 @@ public class Option<T> {
     }
 
     public void setValue(YAMLConfig yamlConfig, T value, Object... replacements) {
-        setValue(yamlConfig.config(), value, StringUtil.convert(replacements));
+        yamlConfig.set(getPath(StringUtil.convert(replacements)), value);
         yamlConfig.saveConfig();
     }
 
@@ -0,0 +1,94 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An option path with {@code %s} placeholders, split into its literal parts once so that resolving it doesn't go
+ * through {@link String#format(String, Object...)}
+ * <p>
+ * Templates using any other format specifiers are still resolved with {@link String#format(String, Object...)}
+ */
+final class PathTemplate {
+
+    private final String template;
+    private final String[] parts;
+
+    private PathTemplate(String template, String[] parts) {
+        this.template = template;
+        this.parts = parts;
+    }
+
+    static PathTemplate compile(String template) {
+        List<String> parts = new ArrayList<>();
+        int from = 0;
+        int index;
+        while ((index = template.indexOf('%', from)) >= 0) {
+            if (index + 1 >= template.length() || template.charAt(index + 1) != 's') {
+                return new PathTemplate(template, null);
+            }
+            parts.add(template.substring(from, index));
+            from = index + 2;
+        }
+        parts.add(template.substring(from));
+        return new PathTemplate(template, parts.toArray(new String[parts.size()]));
+    }
+
+    int getPlaceholders() {
+        return parts == null ? -1 : parts.length - 1;
+    }
+
+    /**
+     * Fills in this template. Any trailing dots left by empty replacements are removed
+     *
+     * @param replacements replacements for each placeholder, in order. Any extra replacements are ignored
+     * @return resolved path
+     * @throws IllegalArgumentException if there are fewer replacements than placeholders
+     */
+    String resolve(Object... replacements) {
+        String path;
+        if (parts == null) {
+            path = String.format(template, replacements);
+        } else if (parts.length == 1) {
+            path = template;
+        } else {
+            if (replacements.length < parts.length - 1) {
+                throw new IllegalArgumentException("Not enough path arguments provided");
+            }
+            StringBuilder builder = new StringBuilder(template.length() + 16 * replacements.length);
+            builder.append(parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                builder.append(replacements[i - 1]).append(parts[i]);
+            }
+            path = builder.toString();
+        }
+
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '.') {
+            end--;
+        }
+        return end == path.length() ? path : path.substring(0, end);
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * An option holding a string, read from a cache without resolving its path again
+ * <p>
+ * Values locked to null in an {@link com.dsh105.commodus.config.Options} are ignored
+ */
+public class StringOption extends CompiledOption<String> {
+
+    public StringOption(FileConfiguration configuration, String path, String... comments) {
+        super(configuration, path, comments);
+    }
+
+    public StringOption(FileConfiguration configuration, String path, String defaultValue, String... comments) {
+        super(configuration, path, defaultValue, comments);
+    }
+
+    public String getString(YAMLConfig config) {
+        return getCached(config);
+    }
+
+    public String getString(YAMLConfig config, String replacement) {
+        return getCached(config, replacement);
+    }
+
+    public String getString(YAMLConfig config, String... replacements) {
+        return getCached(config, replacements);
+    }
+
+    public String getString(Options options, String... replacements) {
+        if (options.isLocked(this, replacements)) {
+            String locked = options.getLockedValue(this);
+            if (locked != null) {
+                return locked;
+            }
+        }
+        return getCached(options.getConfig(), replacements);
+    }
+
+    @Override
+    protected String convert(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    @Override
+    protected String getFallbackValue() {
+        return null;
+    }
+}
@@ -26,20 +26,57 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class YAMLConfig {
 
-    private int comments;
     private YAMLConfigManager manager;
 
     private File file;
-    private FileConfiguration config;
+    private volatile FileConfiguration config;
+    private volatile ConfigComments comments;
     private JavaPlugin plugin;
 
+    private int editDepth;
+    private volatile int revision;
+    private final List<ReloadListener> reloadListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * A batch of changes made through {@link com.dsh105.commodus.config.YAMLConfig#edit(Edit)}
+     */
+    public interface Edit {
+
+        void edit(YAMLConfig config);
+    }
+
+    /**
+     * Notified on the main server thread when a config is reloaded by a {@link com.dsh105.commodus.config.ConfigWatcher}
+     */
+    public interface ReloadListener {
+
+        /**
+         * Called once the new values of a config have been swapped in
+         *
+         * @param config       config that was reloaded
+         * @param changedPaths paths whose values were added, removed or changed. Sections themselves are not included
+         */
+        void onReload(YAMLConfig config, Set<String> changedPaths);
+    }
+
+    YAMLConfig(YAMLConfigManager manager, File configFile, JavaPlugin plugin) {
+        this.manager = manager;
+        this.file = configFile;
+        this.plugin = plugin;
+        this.reloadConfig();
+    }
+
+    /**
+     * @deprecated comments are now held separately from a config's values. Use
+     * {@link com.dsh105.commodus.config.YAMLConfigManager#getNewConfig(String)}
+     */
+    @Deprecated
     public YAMLConfig(InputStream configStream, File configFile, int comments, JavaPlugin plugin) {
-        this.comments = comments;
         this.manager = new YAMLConfigManager(plugin);
 
         this.file = configFile;
@@ -48,6 +85,7 @@ public class YAMLConfig {
         } catch (NoSuchMethodError | UnsupportedEncodingException e) {
             this.config = YamlConfiguration.loadConfiguration(configStream);
         }
+        this.comments = ConfigComments.fromLegacyKeys(this.config, manager.getPluginName() + "_COMMENT_");
         this.plugin = plugin;
     }
 
@@ -55,6 +93,36 @@ public class YAMLConfig {
         return config;
     }
 
+    /**
+     * Gets the revision of this config's values, which changes whenever they are set through this config or reloaded.
+     * Changes made directly to {@link #config()} are not counted
+     *
+     * @return revision of this config's values
+     */
+    public int getRevision() {
+        return revision;
+    }
+
+    public ConfigComments getComments() {
+        return comments;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    YAMLConfigManager getManager() {
+        return manager;
+    }
+
+    public void addReloadListener(ReloadListener listener) {
+        this.reloadListeners.add(listener);
+    }
+
+    public void removeReloadListener(ReloadListener listener) {
+        this.reloadListeners.remove(listener);
+    }
+
     public Object get(String path) {
         return this.config.get(path);
     }
@@ -89,6 +157,7 @@ public class YAMLConfig {
 
     public void createSection(String path) {
         this.config.createSection(path);
+        this.revision++;
     }
 
     public ConfigurationSection getConfigurationSection(String path) {
@@ -117,36 +186,116 @@ public class YAMLConfig {
 
     public void removeKey(String path) {
         this.config.set(path, null);
+        this.revision++;
     }
 
     public void set(String path, Object value) {
         this.config.set(path, value);
+        this.revision++;
     }
 
     public void set(String path, Object value, String... comments) {
-        for (String comment : comments) {
-            if (!this.config.contains(path)) {
-                this.config.set(manager.getPluginName() + "_COMMENT_" + this.comments, " " + comment);
-                this.comments++;
+        if (comments.length > 0 && !this.config.contains(path)) {
+            String[] lines = new String[comments.length];
+            for (int i = 0; i < comments.length; i++) {
+                lines[i] = " " + comments[i];
             }
+            this.comments.setComments(path, lines);
         }
         this.config.set(path, value);
+        this.revision++;
     }
 
     public void setHeader(String[] header) {
-        manager.setHeader(this.file, header);
-        this.comments = header.length + 2;
-        this.reloadConfig();
+        this.comments.getHeader().clear();
+        this.comments.getHeader().addAll(manager.formatHeader(header));
+        this.saveConfig();
     }
 
     public void reloadConfig() {
-        this.config = YamlConfiguration.loadConfiguration(manager.getConfigContent(file));
+        YamlConfiguration config = new YamlConfiguration();
+        this.comments = manager.load(this.file, config);
+        this.config = config;
+        this.revision++;
     }
 
+    /**
+     * Swaps in values loaded in the background, discarding any unsaved changes, and notifies reload listeners of what
+     * changed. Must be called on the main server thread
+     *
+     * @param config   new values
+     * @param comments new comments
+     */
+    void swap(FileConfiguration config, ConfigComments comments) {
+        FileConfiguration previous = this.config;
+        this.comments = comments;
+        this.config = config;
+        this.revision++;
+
+        Set<String> changed = diff(previous, config);
+        if (!changed.isEmpty()) {
+            Set<String> changedPaths = Collections.unmodifiableSet(changed);
+            for (ReloadListener listener : this.reloadListeners) {
+                listener.onReload(this, changedPaths);
+            }
+        }
+    }
+
+    private static Set<String> diff(ConfigurationSection previous, ConfigurationSection current) {
+        Map<String, Object> before = previous.getValues(true);
+        Map<String, Object> after = current.getValues(true);
+        Set<String> changed = new LinkedHashSet<>();
+        for (Map.Entry<String, Object> entry : before.entrySet()) {
+            if (!(entry.getValue() instanceof ConfigurationSection) && !entry.getValue().equals(after.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, Object> entry : after.entrySet()) {
+            if (!(entry.getValue() instanceof ConfigurationSection)) {
+                Object old = before.get(entry.getKey());
+                if (old == null || old instanceof ConfigurationSection) {
+                    changed.add(entry.getKey());
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Writes this config to its file. The values held in memory are written as they are, without being reloaded from
+     * the file afterwards
+     * <p>
+     * Saves made during an {@link #edit(Edit)} are deferred until the edit is complete
+     */
     public void saveConfig() {
-        String config = this.config.saveToString();
-        manager.saveConfig(config, this.file);
-        this.reloadConfig();
+        if (this.editDepth > 0) {
+            return;
+        }
+        manager.save(this.file, this.config, this.comments);
+    }
+
+    /**
+     * Makes a batch of changes to this config, writing it to its file once they are all made. Any saves requested
+     * during the batch, such as by {@link Option#setValue(YAMLConfig, Object, Object...)}, are folded into that write
+     * <p>
+     * Edits may be nested, in which case the config is written once the outermost edit is complete. If the outermost
+     * edit throws an exception, the config is not written. Changes are not rolled back though: any made before the
+     * exception stay in memory, and are written by the next save. An exception thrown by a nested edit and caught by an
+     * enclosing one doesn't prevent the write
+     *
+     * @param edit changes to make
+     */
+    public void edit(Edit edit) {
+        this.editDepth++;
+        boolean completed = false;
+        try {
+            edit.edit(this);
+            completed = true;
+        } finally {
+            if (--this.editDepth == 0 && completed) {
+                this.saveConfig();
+            }
+        }
     }
 
     public Set<String> getKeys(boolean deep) {
@@ -17,19 +17,54 @@
 
 package com.dsh105.commodus.config;
 
+import com.google.common.base.Charsets;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 public class YAMLConfigManager {
 
     private JavaPlugin plugin;
+    private ConfigWriter writer;
+    private ConfigWatcher watcher;
 
     public YAMLConfigManager(JavaPlugin plugin) {
         this.plugin = plugin;
     }
 
+    /**
+     * Sets the writer used to save configs in the background. If no writer is set, configs are saved on the calling
+     * thread
+     *
+     * @param writer writer to save configs with, or null to save them on the calling thread
+     */
+    public void setWriter(ConfigWriter writer) {
+        this.writer = writer;
+    }
+
+    public ConfigWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Sets the watcher used to reload configs when their files change. Configs created by this manager from then on
+     * are watched automatically
+     *
+     * @param watcher watcher to reload configs with, or null to stop watching new configs
+     */
+    public void setWatcher(ConfigWatcher watcher) {
+        this.watcher = watcher;
+    }
+
+    public ConfigWatcher getWatcher() {
+        return watcher;
+    }
+
     public YAMLConfig getNewConfig(String filePath, String[] header) {
         File file = this.getConfigFile(filePath);
 
@@ -43,7 +78,15 @@ public class YAMLConfigManager {
 
         }
 
-        return new YAMLConfig(this.getConfigContent(filePath), file, this.getCommentsNum(file), plugin);
+        YAMLConfig config = new YAMLConfig(this, file, plugin);
+        if (watcher != null && !watcher.isClosed()) {
+            try {
+                watcher.watch(config);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return config;
     }
 
     public YAMLConfig getNewConfig(String filePath) {
@@ -94,60 +137,152 @@ public class YAMLConfigManager {
         this.prepareFile(filePath, null);
     }
 
+    /**
+     * Inserts a boxed header at the top of a config file. Any save of the file still waiting to be written is written
+     * first, so that it doesn't overwrite the header
+     *
+     * @param file   file to add the header to
+     * @param header lines of the header
+     */
     public void setHeader(File file, String[] header) {
+        if (writer != null) {
+            writer.flush(file);
+        }
         if (!file.exists()) {
             return;
         }
 
         try {
-            String currentLine;
-            StringBuilder config = new StringBuilder("");
-            BufferedReader reader = new BufferedReader(new FileReader(file));
+            StringBuilder config = new StringBuilder();
+            for (String line : this.formatHeader(header)) {
+                config.append('#').append(line).append("\n");
+            }
+            config.append("\n");
 
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8));
+            String currentLine;
             while ((currentLine = reader.readLine()) != null) {
-                config.append(currentLine + "\n");
+                config.append(currentLine).append("\n");
             }
-
             reader.close();
-            config.append("# +----------------------------------------------------+ #\n");
 
-            for (String line : header) {
+            String content = config.toString();
+            if (watcher != null) {
+                watcher.expect(file, content);
+            }
+            ConfigWriter.writeAtomically(file, content);
 
-                if (line.length() > 50) {
-                    continue;
-                }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
 
-                int length = (50 - line.length()) / 2;
-                StringBuilder finalLine = new StringBuilder(line);
+    }
 
-                for (int i = 0; i < length; i++) {
-                    finalLine.append(" ");
-                    finalLine.reverse();
-                    finalLine.append(" ");
-                    finalLine.reverse();
-                }
+    /**
+     * Boxes the given header lines, in the form held by {@link com.dsh105.commodus.config.ConfigComments}
+     *
+     * @param header lines of the header. Lines longer than 50 characters are left out
+     * @return formatted header lines
+     */
+    List<String> formatHeader(String[] header) {
+        List<String> lines = new ArrayList<>(header.length + 2);
+        lines.add(" +----------------------------------------------------+ #");
 
-                if (line.length() % 2 != 0) {
-                    finalLine.append(" ");
-                }
+        for (String line : header) {
+
+            if (line.length() > 50) {
+                continue;
+            }
 
-                config.append("# < ").append(finalLine.toString()).append(" > #\n");
+            int length = (50 - line.length()) / 2;
+            StringBuilder finalLine = new StringBuilder(54).append(" < ");
+            for (int i = 0; i < length; i++) {
+                finalLine.append(' ');
+            }
+            finalLine.append(line);
+            for (int i = 0; i < length; i++) {
+                finalLine.append(' ');
+            }
 
+            if (line.length() % 2 != 0) {
+                finalLine.append(' ');
             }
 
-            config.append("# +----------------------------------------------------+ #");
+            lines.add(finalLine.append(" > #").toString());
 
-            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-            writer.write(this.prepareConfigString(config.toString()));
-            writer.flush();
-            writer.close();
+        }
 
+        lines.add(" +----------------------------------------------------+ #");
+        return lines;
+    }
+
+    /**
+     * Loads a config file in a single pass, with its comments kept aside rather than passed to the YAML parser
+     *
+     * @param file   file to load
+     * @param config configuration to load the file's values into
+     * @return comments of the file
+     */
+    ConfigComments load(File file, FileConfiguration config) {
+        if (writer != null) {
+            // Make sure any save still waiting to be written isn't lost
+            writer.flush(file);
+        }
+        if (!file.exists()) {
+            return new ConfigComments();
+        }
+
+        StringBuilder content = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE - 1) + 1);
+        ConfigComments comments;
+        try {
+            Reader reader = new InputStreamReader(new FileInputStream(file), Charsets.UTF_8);
+            try {
+                comments = ConfigComments.read(reader, content);
+            } finally {
+                reader.close();
+            }
         } catch (IOException e) {
             e.printStackTrace();
+            return new ConfigComments();
         }
 
+        try {
+            config.loadFromString(content.toString());
+        } catch (InvalidConfigurationException e) {
+            e.printStackTrace();
+        }
+        return comments;
+    }
+
+    /**
+     * Saves the given values and comments to a config file. The file is written by this manager's {@link
+     * com.dsh105.commodus.config.ConfigWriter} if it has one
+     *
+     * @param file     file to save to
+     * @param config   values to save
+     * @param comments comments to insert
+     */
+    void save(File file, FileConfiguration config, ConfigComments comments) {
+        // Serialised here, as configs may only be used from one thread
+        String content = comments.apply(config.saveToString());
+        if (watcher != null) {
+            watcher.expect(file, content);
+        }
+        if (writer != null) {
+            writer.write(file, content);
+            return;
+        }
+        try {
+            ConfigWriter.writeAtomically(file, content);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
+    /**
+     * @deprecated comments are now held separately from a config's values. Use {@link #getNewConfig(String)}
+     */
+    @Deprecated
     public InputStream getConfigContent(File file) {
         if (!file.exists()) {
             return null;
@@ -189,34 +324,10 @@ public class YAMLConfigManager {
         }
     }
 
-    private int getCommentsNum(File file) {
-        if (!file.exists()) {
-            return 0;
-        }
-
-        try {
-            int comments = 0;
-            String currentLine;
-
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-
-            while ((currentLine = reader.readLine()) != null) {
-
-                if (currentLine.startsWith("#")) {
-                    comments++;
-                }
-
-            }
-
-            reader.close();
-            return comments;
-
-        } catch (IOException e) {
-            e.printStackTrace();
-            return 0;
-        }
-    }
-
+    /**
+     * @deprecated comments are now held separately from a config's values. Use {@link #getNewConfig(String)}
+     */
+    @Deprecated
     public InputStream getConfigContent(String filePath) {
         return this.getConfigContent(this.getConfigFile(filePath));
     }
@@ -291,14 +402,15 @@ public class YAMLConfigManager {
         return config.toString();
     }
 
+    /**
+     * @deprecated comments are now held separately from a config's values. Use {@link YAMLConfig#saveConfig()}
+     */
+    @Deprecated
     public void saveConfig(String configString, File file) {
         String configuration = this.prepareConfigString(configString);
 
         try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-            writer.write(configuration);
-            writer.flush();
-            writer.close();
+            ConfigWriter.writeAtomically(file, configuration);
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -0,0 +1,338 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.packet;
+
+import com.dsh105.commodus.Affirm;
+import com.dsh105.commodus.ServerUtil;
+import com.dsh105.commodus.reflection.AccessorGenerator;
+import com.dsh105.commodus.reflection.FieldGetter;
+import com.dsh105.commodus.reflection.MethodInvoker;
+import com.dsh105.commodus.reflection.Reflection;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers packets for many players and writes them to each connection in one go
+ * <p/>
+ * Sending a packet normally flushes the connection straight away, so a packet sent to a hundred players costs a hundred
+ * flushes, and a hundred packets sent to each of them costs ten thousand. Packets added to a batch are instead queued
+ * for each player's channel. When the batch is flushed, a single task is handed to each channel's event loop, which
+ * writes all of its packets and then flushes once.
+ * <p/>
+ * Batched packets are written straight to each player's Netty channel, bypassing {@code PlayerConnection.sendPacket}
+ * and the {@code NetworkManager}. This has two consequences, so batches are only suited to self-contained packets such
+ * as particles and sounds:
+ * <ul>
+ * <li>Anything the server does when sending a packet through the connection is skipped</li>
+ * <li>Packets for a connection are written in the order they were added, but only once the batch is flushed. Packets
+ * sent through {@link com.dsh105.commodus.packet.PacketSender} in the meantime reach the player first</li>
+ * </ul>
+ * Packets that have to be ordered against other packets should be sent through {@link
+ * com.dsh105.commodus.packet.PacketSender} instead.
+ * <p/>
+ * No more than {@link #getMaxQueuedPerConnection()} packets are held for any one connection. Once that many are
+ * queued, that connection is flushed early. Packets for connections that aren't writable, i.e. whose outbound buffer is
+ * already full, are dropped rather than queued.
+ */
+public class PacketBatch {
+
+    public static final int DEFAULT_MAX_QUEUED_PER_CONNECTION = 256;
+
+    private static volatile ChannelAccessor CHANNEL_ACCESSOR;
+
+    private final ChannelAccessor channelAccessor;
+    private final Class<?> packetClass;
+    private final int maxQueuedPerConnection;
+    private final Map<Object, List<Object>> queued = new IdentityHashMap<>();
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    private BukkitTask flushTask;
+
+    public PacketBatch() {
+        this(DEFAULT_MAX_QUEUED_PER_CONNECTION);
+    }
+
+    /**
+     * Constructs a new packet batch
+     *
+     * @param maxQueuedPerConnection maximum number of packets held for each connection before it is flushed early
+     */
+    public PacketBatch(int maxQueuedPerConnection) {
+        this(getChannelAccessor(), PacketSender.getInstance().getPacketClass(), maxQueuedPerConnection);
+    }
+
+    PacketBatch(ChannelAccessor channelAccessor, Class<?> packetClass, int maxQueuedPerConnection) {
+        Affirm.isTrue(maxQueuedPerConnection > 0, "Queue limit must be positive");
+        this.channelAccessor = channelAccessor;
+        this.packetClass = packetClass;
+        this.maxQueuedPerConnection = maxQueuedPerConnection;
+    }
+
+    public int getMaxQueuedPerConnection() {
+        return maxQueuedPerConnection;
+    }
+
+    /**
+     * Gets the number of packets dropped because their connection wasn't writable
+     *
+     * @return number of dropped packets
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
+    /**
+     * Queues a packet for a certain player
+     *
+     * @param packet packet to send
+     * @param player player to send the packet to
+     */
+    public void add(Object packet, Player player) {
+        checkPacket(packet);
+        queue(packet, player);
+    }
+
+    /**
+     * Queues a packet for each of the given players. The same packet object is sent to every player
+     *
+     * @param packet  packet to send
+     * @param players players to send the packet to
+     */
+    public void add(Object packet, Collection<? extends Player> players) {
+        checkPacket(packet);
+        for (Player player : players) {
+            queue(packet, player);
+        }
+    }
+
+    /**
+     * Gets the number of connections with packets waiting to be flushed
+     *
+     * @return number of connections with queued packets
+     */
+    public synchronized int getQueuedConnections() {
+        return queued.size();
+    }
+
+    /**
+     * Hands every queued packet to the network, flushing each connection once
+     */
+    public void flush() {
+        Map<Object, List<Object>> toFlush;
+        synchronized (this) {
+            if (queued.isEmpty()) {
+                return;
+            }
+            toFlush = new IdentityHashMap<>(queued);
+            queued.clear();
+        }
+        for (Map.Entry<Object, List<Object>> entry : toFlush.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Flushes this batch once every server tick. Scheduled tasks run at the start of each tick, so packets added during
+     * a tick are written at the start of the next one
+     *
+     * @param plugin plugin to schedule the flushing task with
+     */
+    public synchronized void startFlushing(Plugin plugin) {
+        if (flushTask == null) {
+            flushTask = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, 1L, 1L);
+        }
+    }
+
+    /**
+     * Stops the task started by {@link #startFlushing(org.bukkit.plugin.Plugin)}, flushing anything still queued
+     */
+    public void stopFlushing() {
+        synchronized (this) {
+            if (flushTask != null) {
+                flushTask.cancel();
+                flushTask = null;
+            }
+        }
+        flush();
+    }
+
+    private void queue(Object packet, Player player) {
+        Object channel = channelAccessor.getChannel(player);
+        if (channel == null) {
+            return;
+        }
+        if (!channelAccessor.isWritable(channel)) {
+            // The player can't keep up, so don't add to what they already have to receive
+            droppedPackets.incrementAndGet();
+            return;
+        }
+
+        List<Object> packets;
+        synchronized (this) {
+            packets = queued.get(channel);
+            if (packets == null) {
+                packets = new ArrayList<>();
+                queued.put(channel, packets);
+            }
+            packets.add(packet);
+            if (packets.size() < maxQueuedPerConnection) {
+                return;
+            }
+            queued.remove(channel);
+        }
+        // Too much waiting for this connection - don't hold any more
+        write(channel, packets);
+    }
+
+    private void write(Object channel, List<Object> packets) {
+        if (!channelAccessor.isWritable(channel)) {
+            droppedPackets.addAndGet(packets.size());
+            return;
+        }
+        channelAccessor.writeAndFlush(channel, packets);
+    }
+
+    private void checkPacket(Object packet) {
+        if (!packetClass.isInstance(packet)) {
+            throw new IllegalArgumentException("Object to send must be a subclass of " + packetClass.getCanonicalName());
+        }
+    }
+
+    private static ChannelAccessor getChannelAccessor() {
+        ChannelAccessor accessor = CHANNEL_ACCESSOR;
+        if (accessor == null) {
+            synchronized (PacketBatch.class) {
+                accessor = CHANNEL_ACCESSOR;
+                if (accessor == null) {
+                    accessor = CHANNEL_ACCESSOR = new NettyChannelAccessor();
+                }
+            }
+        }
+        return accessor;
+    }
+
+    /**
+     * Reaches the network channel of each connection
+     */
+    abstract static class ChannelAccessor {
+
+        /**
+         * Gets the channel of the given player
+         *
+         * @param player player to get the channel of
+         * @return channel of the given player, or null if they have none
+         */
+        abstract Object getChannel(Player player);
+
+        abstract boolean isWritable(Object channel);
+
+        /**
+         * Writes each of the given packets to a channel in order, then flushes it once
+         *
+         * @param channel channel to write to
+         * @param packets packets to write
+         */
+        abstract void writeAndFlush(Object channel, List<Object> packets);
+    }
+
+    /**
+     * Reaches the Netty channel of each connection. Netty is relocated on some servers, so it is found by type rather
+     * than by name
+     */
+    private static final class NettyChannelAccessor extends ChannelAccessor {
+
+        private final FieldGetter<Object, Object> networkManager;
+        private final FieldGetter<Object, Object> channel;
+        private final MethodInvoker eventLoop;
+        private final MethodInvoker isWritable;
+        private final MethodInvoker write;
+        private final MethodInvoker flush;
+
+        private NettyChannelAccessor() {
+            Class<?> networkManagerClass = Reflection.getNMSClass("NetworkManager");
+            Class<?> entityPlayerClass = Reflection.getNMSClass("EntityPlayer");
+            Field connectionField = entityPlayerClass == null ? null : Reflection.getField(entityPlayerClass, "playerConnection");
+            Field networkManagerField = connectionField == null || networkManagerClass == null ? null : findField(connectionField.getType(), networkManagerClass, null);
+            Field channelField = networkManagerField == null ? null : findField(networkManagerClass, null, ".channel.Channel");
+            if (channelField == null) {
+                throw new IllegalStateException("Failed to find network channels for server version " + ServerUtil.getVersionTag());
+            }
+
+            Class<?> channelClass = channelField.getType();
+            networkManager = AccessorGenerator.getFieldGetter(networkManagerField);
+            channel = AccessorGenerator.getFieldGetter(channelField);
+            eventLoop = AccessorGenerator.getMethodInvoker(channelClass, "eventLoop");
+            isWritable = AccessorGenerator.getMethodInvoker(channelClass, "isWritable");
+            write = AccessorGenerator.getMethodInvoker(channelClass, "write", Object.class);
+            flush = AccessorGenerator.getMethodInvoker(channelClass, "flush");
+        }
+
+        private static Field findField(Class<?> clazz, Class<?> type, String typeNameSuffix) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (type != null ? field.getType() == type : field.getType().getName().endsWith(typeNameSuffix)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Object getChannel(Player player) {
+            Object connection = PacketSender.getInstance().getConnection(player);
+            if (connection == null) {
+                return null;
+            }
+            Object manager = networkManager.get(connection);
+            return manager == null ? null : channel.get(manager);
+        }
+
+        @Override
+        boolean isWritable(Object channel) {
+            return (Boolean) isWritable.invoke(channel);
+        }
+
+        @Override
+        void writeAndFlush(final Object channel, final List<Object> packets) {
+            ((Executor) eventLoop.invoke(channel)).execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (Object packet : packets) {
+                        write.invoke(channel, packet);
+                    }
+                    flush.invoke(channel);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.packet;
+
+import com.dsh105.commodus.ServerUtil;
+import com.dsh105.commodus.reflection.AccessorGenerator;
+import com.dsh105.commodus.reflection.FieldGetter;
+import com.dsh105.commodus.reflection.MethodInvoker;
+import com.dsh105.commodus.reflection.Reflection;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sends NMS packets to players, resolving everything needed to do so once rather than on every packet
+ * <p/>
+ * When enabled through {@link #enableConnectionCache(org.bukkit.plugin.Plugin)}, the connection of each player is also
+ * cached until they quit, so sending a packet is a single call
+ */
+public class PacketSender {
+
+    private static volatile PacketSender INSTANCE;
+
+    private final Class<?> packetClass;
+    private final MethodInvoker getHandle;
+    private final FieldGetter<Object, Object> playerConnection;
+    private final MethodInvoker sendPacket;
+
+    private final ConcurrentMap<Player, Object> connections = new ConcurrentHashMap<>();
+    private Listener cacheListener;
+
+    private PacketSender() {
+        packetClass = Reflection.getNMSClass("Packet");
+        Class<?> craftPlayerClass = Reflection.getOBCClass("entity.CraftPlayer");
+        Class<?> entityPlayerClass = Reflection.getNMSClass("EntityPlayer");
+        Field connectionField = entityPlayerClass == null ? null : Reflection.getField(entityPlayerClass, "playerConnection");
+        if (packetClass == null || craftPlayerClass == null || connectionField == null) {
+            throw new IllegalStateException("Failed to resolve packet sending for server version " + ServerUtil.getVersionTag());
+        }
+        getHandle = AccessorGenerator.getMethodInvoker(craftPlayerClass, "getHandle");
+        playerConnection = AccessorGenerator.getFieldGetter(connectionField);
+        sendPacket = AccessorGenerator.getMethodInvoker(connectionField.getType(), "sendPacket", packetClass);
+        if (getHandle == null || playerConnection == null || sendPacket == null) {
+            throw new IllegalStateException("Failed to resolve packet sending for server version " + ServerUtil.getVersionTag());
+        }
+    }
+
+    /**
+     * Gets the packet sender for this server, resolving it if necessary
+     *
+     * @return the packet sender for this server
+     */
+    public static PacketSender getInstance() {
+        PacketSender instance = INSTANCE;
+        if (instance == null) {
+            synchronized (PacketSender.class) {
+                instance = INSTANCE;
+                if (instance == null) {
+                    instance = INSTANCE = new PacketSender();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the NMS class all packets extend
+     *
+     * @return NMS packet class
+     */
+    public Class<?> getPacketClass() {
+        return packetClass;
+    }
+
+    /**
+     * Caches player connections until each player quits. The cache is cleared automatically when the given plugin is
+     * disabled
+     *
+     * @param plugin plugin to register the listener invalidating connections with
+     */
+    public synchronized void enableConnectionCache(final Plugin plugin) {
+        if (cacheListener != null) {
+            return;
+        }
+
+        Listener listener = new Listener() {
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onQuit(PlayerQuitEvent event) {
+                connections.remove(event.getPlayer());
+            }
+
+            @EventHandler
+            public void onDisable(PluginDisableEvent event) {
+                if (event.getPlugin() == plugin) {
+                    disableConnectionCache();
+                }
+            }
+        };
+        Bukkit.getPluginManager().registerEvents(listener, plugin);
+        cacheListener = listener;
+    }
+
+    /**
+     * Disables the cache enabled by {@link #enableConnectionCache(org.bukkit.plugin.Plugin)}
+     */
+    public synchronized void disableConnectionCache() {
+        if (cacheListener != null) {
+            HandlerList.unregisterAll(cacheListener);
+            cacheListener = null;
+            connections.clear();
+        }
+    }
+
+    public boolean isConnectionCacheEnabled() {
+        return cacheListener != null;
+    }
+
+    /**
+     * Gets the NMS connection of the given player
+     *
+     * @param player player to get the connection of
+     * @return NMS connection of the given player
+     */
+    public Object getConnection(Player player) {
+        Object connection = connections.get(player);
+        if (connection == null) {
+            connection = playerConnection.get(getHandle.invoke(player));
+            if (connection != null && cacheListener != null && player.isOnline()) {
+                connections.put(player, connection);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Sends the given packet to a certain player
+     *
+     * @param packet packet to send
+     * @param player player to send the packet to
+     */
+    public void sendPacket(Object packet, Player player) {
+        checkPacket(packet);
+        send(packet, player);
+    }
+
+    /**
+     * Sends the given packet to each of the given players. The same packet object is sent to every player
+     *
+     * @param packet  packet to send
+     * @param players players to send the packet to
+     */
+    public void broadcast(Object packet, Collection<? extends Player> players) {
+        checkPacket(packet);
+        for (Player player : players) {
+            send(packet, player);
+        }
+    }
+
+    /**
+     * Sends the given packet to every online player. The same packet object is sent to every player
+     *
+     * @param packet packet to send
+     */
+    public void broadcast(Object packet) {
+        broadcast(packet, ServerUtil.getOnlinePlayers());
+    }
+
+    private void send(Object packet, Player player) {
+        Object connection = getConnection(player);
+        if (connection != null) {
+            sendPacket.invoke(connection, packet);
+        }
+    }
+
+    private void checkPacket(Object packet) {
+        if (!packetClass.isInstance(packet)) {
+            throw new IllegalArgumentException("Object to send must be a subclass of " + packetClass.getCanonicalName());
+        }
+    }
+}
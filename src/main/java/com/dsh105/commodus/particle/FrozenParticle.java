@@ -0,0 +1,184 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.particle;
+
+import com.dsh105.commodus.GeometryUtil;
+import com.dsh105.commodus.ServerUtil;
+import com.dsh105.commodus.spatial.PlayerSpatialIndex;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A particle effect built into a packet that is never modified, created by {@link ParticleBuilder#freeze()}
+ * <p/>
+ * The same packet is sent to every recipient, on every tick it is shown, so redrawing an effect never builds or encodes
+ * another packet. Finding the players to show it to still allocates, as {@link #show()} looks up nearby players each
+ * time. Moving the effect creates a new frozen particle, leaving this one untouched.
+ */
+public final class FrozenParticle {
+
+    private final Particle type;
+    private final Object nmsType;
+    private final World world;
+    private final float x;
+    private final float y;
+    private final float z;
+    private final float offsetX;
+    private final float offsetY;
+    private final float offsetZ;
+    private final float speed;
+    private final int amount;
+    private final int[] data;
+    private final boolean force;
+
+    private final Object packet;
+
+    FrozenParticle(Particle type, Object nmsType, World world, float x, float y, float z, float offsetX, float offsetY, float offsetZ, float speed, int amount, int[] data, boolean force) {
+        this.type = type;
+        this.nmsType = nmsType;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+        this.speed = speed;
+        this.amount = amount;
+        this.data = data;
+        this.force = force;
+        this.packet = ParticlePacket.getInstance().create(nmsType, x, y, z, offsetX, offsetY, offsetZ, speed, amount, data, force);
+    }
+
+    /**
+     * Returns this effect moved to a new position. Nothing but the position is recalculated
+     *
+     * @param position new position of the effect
+     * @return frozen particle at the given position
+     */
+    public FrozenParticle at(Location position) {
+        return new FrozenParticle(type, nmsType, position.getWorld(), (float) position.getX(), (float) position.getY(), (float) position.getZ(), offsetX, offsetY, offsetZ, speed, amount, data, force);
+    }
+
+    /**
+     * Returns this effect moved to a new position in the same world. Nothing but the position is recalculated
+     *
+     * @param x new x coordinate of the effect
+     * @param y new y coordinate of the effect
+     * @param z new z coordinate of the effect
+     * @return frozen particle at the given position
+     */
+    public FrozenParticle at(double x, double y, double z) {
+        return new FrozenParticle(type, nmsType, world, (float) x, (float) y, (float) z, offsetX, offsetY, offsetZ, speed, amount, data, force);
+    }
+
+    /**
+     * Creates a packet showing this effect at another position, without creating another frozen particle
+     *
+     * @param x x coordinate of the effect
+     * @param y y coordinate of the effect
+     * @param z z coordinate of the effect
+     * @return NMS packet showing this effect at the given position
+     */
+    Object createPacketAt(double x, double y, double z) {
+        return ParticlePacket.getInstance().create(nmsType, (float) x, (float) y, (float) z, offsetX, offsetY, offsetZ, speed, amount, data, force);
+    }
+
+    /**
+     * Returns this effect with a different number of particles
+     *
+     * @param amount number of particles
+     * @return frozen particle with the given amount
+     */
+    FrozenParticle withAmount(int amount) {
+        return amount == this.amount ? this : new FrozenParticle(type, nmsType, world, x, y, z, offsetX, offsetY, offsetZ, speed, amount, data, force);
+    }
+
+    /**
+     * Returns whether the given particle differs from this one by no more than its amount
+     *
+     * @param other particle to compare to
+     * @return true if both particles show the same effect in the same place
+     */
+    boolean isSameEffect(FrozenParticle other) {
+        return type == other.type && world == other.world && x == other.x && y == other.y && z == other.z
+                && offsetX == other.offsetX && offsetY == other.offsetY && offsetZ == other.offsetZ && speed == other.speed
+                && force == other.force && nmsType.equals(other.nmsType) && Arrays.equals(data, other.data);
+    }
+
+    int effectHashCode() {
+        int result = type.hashCode();
+        result = 31 * result + Float.floatToIntBits(x);
+        result = 31 * result + Float.floatToIntBits(y);
+        result = 31 * result + Float.floatToIntBits(z);
+        return 31 * result + Arrays.hashCode(data);
+    }
+
+    public void show(Player player) {
+        ServerUtil.sendPacket(packet, player);
+    }
+
+    public void show(Collection<Player> players) {
+        ServerUtil.sendPacket(packet, players);
+    }
+
+    public void show() {
+        show(GeometryUtil.getNearbyPlayers(getPosition(), PlayerSpatialIndex.getViewDistance()));
+    }
+
+    /**
+     * Gets the NMS packet of this effect. It must not be modified
+     *
+     * @return NMS packet of this effect
+     */
+    public Object getHandle() {
+        return packet;
+    }
+
+    public Particle getType() {
+        return type;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getZ() {
+        return z;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public Location getPosition() {
+        return new Location(world, x, y, z);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.particle;
+
+import com.dsh105.commodus.ServerUtil;
+import com.dsh105.commodus.packet.PacketBatch;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+
+/**
+ * A {@link com.dsh105.commodus.particle.ParticleShape} built into packets that are never modified, created by {@link
+ * com.dsh105.commodus.particle.ParticleShape#freeze(FrozenParticle)}
+ * <p/>
+ * The same packets are sent every time the shape is shown, so redrawing it allocates nothing
+ */
+public final class FrozenShape {
+
+    private final World world;
+    private final Object[] packets;
+
+    FrozenShape(World world, Object[] packets) {
+        this.world = world;
+        this.packets = packets;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public int getPointCount() {
+        return packets.length;
+    }
+
+    public void show(Player player) {
+        for (Object packet : packets) {
+            ServerUtil.sendPacket(packet, player);
+        }
+    }
+
+    public void show(Collection<Player> players) {
+        for (Object packet : packets) {
+            ServerUtil.sendPacket(packet, players);
+        }
+    }
+
+    public void show(PacketBatch batch, Collection<? extends Player> players) {
+        for (Object packet : packets) {
+            batch.add(packet, players);
+        }
+    }
+}
@@ -17,23 +17,16 @@
 
 package com.dsh105.commodus.particle;
 
-import com.captainbern.minecraft.protocol.PacketType;
-import com.captainbern.minecraft.reflection.MinecraftMethods;
-import com.captainbern.minecraft.wrapper.WrappedPacket;
 import com.dsh105.commodus.GeneralUtil;
 import com.dsh105.commodus.GeometryUtil;
 import com.dsh105.commodus.ServerUtil;
-import com.dsh105.commodus.Version;
-import com.dsh105.commodus.reflection.Reflection;
+import com.dsh105.commodus.spatial.PlayerSpatialIndex;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.util.Vector;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-
 public class ParticleBuilder implements Cloneable {
 
     private Particle type;
@@ -43,6 +36,7 @@ public class ParticleBuilder implements Cloneable {
     private int amount;
     private boolean force; // force display
     private int[] data = new int[0];
+    private Object nmsType;
 
     @Deprecated
     public ParticleBuilder(String name, float speed, int amount) {
@@ -61,43 +55,45 @@ public class ParticleBuilder implements Cloneable {
     }
 
     public void show(Player player) {
-        WrappedPacket packet = new WrappedPacket(PacketType.Play.Server.WORLD_PARTICLES);
-        packet.getAccessor().write(0, getNMSParticleType());
-        packet.getFloats().write(0, (float) position.getX());
-        packet.getFloats().write(1, (float) position.getY());
-        packet.getFloats().write(2, (float) position.getZ());
-        packet.getFloats().write(3, (float) offset.getX());
-        packet.getFloats().write(4, (float) offset.getY());
-        packet.getFloats().write(5, (float) offset.getZ());
-        packet.getFloats().write(6, speed);
-        packet.getIntegers().write(0, amount);
-        if (new Version().isCompatible("1.8")) {
-            packet.getIntegerArrays().write(0, data);
-            packet.getBooleans().write(0, this.force); // TODO
-        }
-        ServerUtil.sendPacket(packet.getHandle(), player);
-    }
-
-    private Object getNMSParticleType() {
-        if (new Version().isCompatible("1.8")) {
-            Class<?> enumParticle = Reflection.getNMSClass("EnumParticle");
-            return enumParticle.getEnumConstants()[type.getId()];
-        }
-        String name = type.getName();
-        for (int i : data) {
-            name += "_" + i;
-        }
-        return name;
+        ServerUtil.sendPacket(createPacket(), player);
     }
 
     public void show() {
-        for (Player player : GeometryUtil.getNearbyPlayers(position, 50)) {
-            show(player);
+        // Every nearby player gets the same packet
+        ServerUtil.sendPacket(createPacket(), GeometryUtil.getNearbyPlayers(position, PlayerSpatialIndex.getViewDistance()));
+    }
+
+    /**
+     * Builds this effect into a packet that can be shown any number of times, to any number of players. Later changes to
+     * this builder do not affect the returned particle
+     *
+     * @return frozen copy of this effect
+     */
+    public FrozenParticle freeze() {
+        return new FrozenParticle(type, getNMSParticleType(ParticlePacket.getInstance()), position.getWorld(),
+                (float) position.getX(), (float) position.getY(), (float) position.getZ(),
+                (float) offset.getX(), (float) offset.getY(), (float) offset.getZ(),
+                speed, amount, data.clone(), force);
+    }
+
+    private Object createPacket() {
+        ParticlePacket particlePacket = ParticlePacket.getInstance();
+        return particlePacket.create(getNMSParticleType(particlePacket),
+                (float) position.getX(), (float) position.getY(), (float) position.getZ(),
+                (float) offset.getX(), (float) offset.getY(), (float) offset.getZ(),
+                speed, amount, data, force);
+    }
+
+    private Object getNMSParticleType(ParticlePacket particlePacket) {
+        if (nmsType == null) {
+            nmsType = particlePacket.getType(type, data);
         }
+        return nmsType;
     }
 
     public ParticleBuilder ofType(Particle type) {
         this.type = type;
+        this.nmsType = null;
         return this;
     }
 
@@ -133,6 +129,7 @@ public class ParticleBuilder implements Cloneable {
 
     public ParticleBuilder withData(int... data) {
         this.data = data != null ? data : new int[0];
+        this.nmsType = null;
         return this;
     }
 
@@ -142,6 +139,7 @@ public class ParticleBuilder implements Cloneable {
 
     public ParticleBuilder ofBlockType(Material material, int metadata) {
         this.data = new int[]{material.getId(), metadata};
+        this.nmsType = null;
         return this;
     }
 
@@ -0,0 +1,176 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.particle;
+
+import com.dsh105.commodus.ServerUtil;
+import com.dsh105.commodus.Version;
+import com.dsh105.commodus.reflection.Reflection;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Layout of the NMS particle packet for this server, resolved once
+ * <p/>
+ * The fields of the packet are found by type, in declaration order, and the NMS type of every {@link
+ * com.dsh105.commodus.particle.Particle} is looked up up front. Creating a packet is then a matter of filling in its
+ * fields.
+ */
+final class ParticlePacket {
+
+    private static volatile ParticlePacket INSTANCE;
+
+    private final boolean supportsData;
+    private final Constructor<?> constructor;
+    private final Field typeField;
+    private final Field[] floatFields;
+    private final Field amountField;
+    private final Field dataField;
+    private final Field forceField;
+
+    // NMS particle types, by Particle ordinal
+    private final Object[] types;
+
+    private ParticlePacket() {
+        supportsData = new Version().isCompatible("1.8");
+
+        Class<?> packetClass = Reflection.getNMSClass("PacketPlayOutWorldParticles");
+        if (packetClass == null) {
+            throw new IllegalStateException("Failed to resolve particle packet for server version " + ServerUtil.getVersionTag());
+        }
+        try {
+            constructor = packetClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Failed to resolve particle packet for server version " + ServerUtil.getVersionTag(), e);
+        }
+
+        List<Field> fields = new ArrayList<>();
+        List<Field> floats = new ArrayList<>();
+        List<Field> ints = new ArrayList<>();
+        List<Field> intArrays = new ArrayList<>();
+        List<Field> booleans = new ArrayList<>();
+        for (Field field : packetClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            field.setAccessible(true);
+            fields.add(field);
+            if (field.getType() == float.class) {
+                floats.add(field);
+            } else if (field.getType() == int.class) {
+                ints.add(field);
+            } else if (field.getType() == int[].class) {
+                intArrays.add(field);
+            } else if (field.getType() == boolean.class) {
+                booleans.add(field);
+            }
+        }
+        if (fields.isEmpty() || floats.size() < 7 || ints.isEmpty() || (supportsData && (intArrays.isEmpty() || booleans.isEmpty()))) {
+            throw new IllegalStateException("Unexpected particle packet layout for server version " + ServerUtil.getVersionTag());
+        }
+        typeField = fields.get(0);
+        floatFields = floats.subList(0, 7).toArray(new Field[7]);
+        amountField = ints.get(0);
+        dataField = supportsData ? intArrays.get(0) : null;
+        forceField = supportsData ? booleans.get(0) : null;
+
+        Particle[] particles = Particle.values();
+        types = new Object[particles.length];
+        Object[] enumParticles = supportsData ? Reflection.getNMSClass("EnumParticle").getEnumConstants() : null;
+        for (Particle particle : particles) {
+            types[particle.ordinal()] = supportsData ? enumParticles[particle.getId()] : particle.getName();
+        }
+    }
+
+    /**
+     * Gets the particle packet layout for this server, resolving it if necessary
+     *
+     * @return particle packet layout for this server
+     */
+    static ParticlePacket getInstance() {
+        ParticlePacket instance = INSTANCE;
+        if (instance == null) {
+            synchronized (ParticlePacket.class) {
+                instance = INSTANCE;
+                if (instance == null) {
+                    instance = INSTANCE = new ParticlePacket();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns whether particle packets carry data and the force flag, rather than encoding data in the particle name
+     *
+     * @return true if the server is 1.8 or above
+     */
+    boolean supportsData() {
+        return supportsData;
+    }
+
+    /**
+     * Gets the NMS type to send for a particle
+     *
+     * @param particle particle to get the type of
+     * @param data     particle data, encoded in the type name before 1.8
+     * @return NMS type of the given particle
+     */
+    Object getType(Particle particle, int[] data) {
+        Object type = types[particle.ordinal()];
+        if (supportsData || data.length == 0) {
+            return type;
+        }
+        StringBuilder name = new StringBuilder((String) type);
+        for (int i : data) {
+            name.append('_').append(i);
+        }
+        return name.toString();
+    }
+
+    Object create(Object type, float x, float y, float z, float offsetX, float offsetY, float offsetZ, float speed, int amount, int[] data, boolean force) {
+        try {
+            Object packet = constructor.newInstance();
+            typeField.set(packet, type);
+            setPosition(packet, x, y, z);
+            floatFields[3].setFloat(packet, offsetX);
+            floatFields[4].setFloat(packet, offsetY);
+            floatFields[5].setFloat(packet, offsetZ);
+            floatFields[6].setFloat(packet, speed);
+            amountField.setInt(packet, amount);
+            if (supportsData) {
+                dataField.set(packet, data);
+                forceField.setBoolean(packet, force);
+            }
+            return packet;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create particle packet", e);
+        }
+    }
+
+    void setPosition(Object packet, float x, float y, float z) throws IllegalAccessException {
+        floatFields[0].setFloat(packet, x);
+        floatFields[1].setFloat(packet, y);
+        floatFields[2].setFloat(packet, z);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.particle;
+
+import com.dsh105.commodus.Affirm;
+import com.dsh105.commodus.GeometryUtil;
+import com.dsh105.commodus.ServerUtil;
+import com.dsh105.commodus.packet.PacketBatch;
+import com.dsh105.commodus.spatial.PlayerSpatialIndex;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Queues particle effects and shows them once per tick, within a budget
+ * <p/>
+ * Effects scheduled more than once in a tick at the same place are merged. No more than {@link #getTickBudget()}
+ * packets are sent each tick, and no more than {@link #getPlayerBudget()} to any one player. Effects that don't fit
+ * in the budget are dropped rather than carried over, as effects are usually redrawn every tick anyway.
+ * <p/>
+ * Viewers further away than {@link #getDetailDistance()} are sent half as many particles, and those more than twice
+ * as far away a quarter as many.
+ */
+public class ParticleScheduler {
+
+    private final Plugin plugin;
+
+    private int tickBudget = 2000;
+    private int playerBudget = 100;
+    private double detailDistance = 16;
+
+    private Map<EffectKey, FrozenParticle> queued = new LinkedHashMap<>();
+    // Only used on the main thread, so reused rather than allocated for every effect and viewer
+    private final Location origin = new Location(null, 0, 0, 0);
+    private final Location viewerLocation = new Location(null, 0, 0, 0);
+    private PacketBatch batch;
+    private BukkitTask task;
+
+    private long shown;
+    private long dropped;
+
+    /**
+     * Constructs a new particle scheduler. Effects are not shown until {@link #start()} is called
+     *
+     * @param plugin plugin to schedule with
+     */
+    public ParticleScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Sets the maximum number of packets sent each tick, across all players
+     *
+     * @param tickBudget maximum packets per tick
+     * @return this scheduler
+     */
+    public ParticleScheduler withTickBudget(int tickBudget) {
+        Affirm.isTrue(tickBudget > 0, "Tick budget must be positive");
+        this.tickBudget = tickBudget;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of packets sent to each player each tick
+     *
+     * @param playerBudget maximum packets per player per tick
+     * @return this scheduler
+     */
+    public ParticleScheduler withPlayerBudget(int playerBudget) {
+        Affirm.isTrue(playerBudget > 0, "Player budget must be positive");
+        this.playerBudget = playerBudget;
+        return this;
+    }
+
+    /**
+     * Sets the distance within which viewers see effects in full
+     *
+     * @param detailDistance full detail distance, in blocks
+     * @return this scheduler
+     */
+    public ParticleScheduler withDetailDistance(double detailDistance) {
+        Affirm.isTrue(detailDistance > 0, "Detail distance must be positive");
+        this.detailDistance = detailDistance;
+        return this;
+    }
+
+    public int getTickBudget() {
+        return tickBudget;
+    }
+
+    public int getPlayerBudget() {
+        return playerBudget;
+    }
+
+    public double getDetailDistance() {
+        return detailDistance;
+    }
+
+    /**
+     * Gets the number of packets sent since this scheduler was started
+     *
+     * @return number of packets sent
+     */
+    public synchronized long getShownCount() {
+        return shown;
+    }
+
+    /**
+     * Gets the number of packets dropped to stay within budget since this scheduler was started
+     *
+     * @return number of packets dropped
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Starts showing queued effects every tick
+     */
+    public synchronized void start() {
+        if (task != null) {
+            return;
+        }
+        try {
+            batch = new PacketBatch(playerBudget);
+        } catch (IllegalStateException e) {
+            // Fall back to sending packets one at a time
+            batch = null;
+        }
+        task = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, 1L, 1L);
+    }
+
+    /**
+     * Stops showing effects, discarding anything queued
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+            queued.clear();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return task != null;
+    }
+
+    /**
+     * Queues an effect to be shown on the next tick
+     *
+     * @param builder effect to show
+     */
+    public void schedule(ParticleBuilder builder) {
+        schedule(builder.freeze());
+    }
+
+    /**
+     * Queues an effect to be shown on the next tick. If the same effect is already queued at the same place, the one
+     * with the larger amount is kept
+     *
+     * @param particle effect to show
+     */
+    public synchronized void schedule(FrozenParticle particle) {
+        EffectKey key = new EffectKey(particle);
+        FrozenParticle existing = queued.get(key);
+        if (existing == null || existing.getAmount() < particle.getAmount()) {
+            queued.put(key, particle);
+        }
+    }
+
+    private void tick() {
+        Map<EffectKey, FrozenParticle> effects;
+        synchronized (this) {
+            if (queued.isEmpty()) {
+                return;
+            }
+            effects = queued;
+            queued = new LinkedHashMap<>();
+        }
+
+        Budget budget = new Budget(tickBudget, playerBudget);
+        double detailDistanceSquared = detailDistance * detailDistance;
+        for (FrozenParticle particle : effects.values()) {
+            FrozenParticle halfDetail = null;
+            FrozenParticle quarterDetail = null;
+            origin.setWorld(particle.getWorld());
+            origin.setX(particle.getX());
+            origin.setY(particle.getY());
+            origin.setZ(particle.getZ());
+            for (Player player : GeometryUtil.getNearbyPlayers(origin, PlayerSpatialIndex.getViewDistance())) {
+                if (!budget.take(player)) {
+                    continue;
+                }
+
+                // Level of detail
+                FrozenParticle toSend = particle;
+                double distanceSquared = GeometryUtil.distanceSquared(player.getLocation(viewerLocation), particle.getX(), particle.getY(), particle.getZ());
+                int amount = getDetailAmount(particle.getAmount(), distanceSquared, detailDistanceSquared);
+                if (amount != particle.getAmount()) {
+                    if (distanceSquared > 4 * detailDistanceSquared) {
+                        toSend = quarterDetail != null ? quarterDetail : (quarterDetail = particle.withAmount(amount));
+                    } else {
+                        toSend = halfDetail != null ? halfDetail : (halfDetail = particle.withAmount(amount));
+                    }
+                }
+                send(toSend, player);
+            }
+        }
+        origin.setWorld(null);
+        viewerLocation.setWorld(null);
+        if (batch != null) {
+            batch.flush();
+        }
+
+        synchronized (this) {
+            shown += budget.getSent();
+            dropped += budget.getSkipped();
+        }
+    }
+
+    /**
+     * Gets the number of particles of an effect shown to a viewer at a certain distance from it
+     *
+     * @param amount                full number of particles in the effect
+     * @param distanceSquared       squared distance between the effect and the viewer
+     * @param detailDistanceSquared squared distance within which effects are shown in full
+     * @return number of particles to show
+     */
+    static int getDetailAmount(int amount, double distanceSquared, double detailDistanceSquared) {
+        if (distanceSquared <= detailDistanceSquared || amount <= 1) {
+            return amount;
+        }
+        return Math.max(1, distanceSquared > 4 * detailDistanceSquared ? amount / 4 : amount / 2);
+    }
+
+    private void send(FrozenParticle particle, Player player) {
+        if (batch != null) {
+            batch.add(particle.getHandle(), player);
+        } else {
+            particle.show(player);
+        }
+    }
+
+    /**
+     * Counts the packets sent during a tick, overall and to each viewer
+     */
+    static final class Budget {
+
+        private final int tickBudget;
+        private final int playerBudget;
+        private final Map<Object, Integer> sentTo = new HashMap<>();
+        private int sent;
+        private int skipped;
+
+        Budget(int tickBudget, int playerBudget) {
+            this.tickBudget = tickBudget;
+            this.playerBudget = playerBudget;
+        }
+
+        /**
+         * Takes a packet for the given viewer out of this budget
+         *
+         * @param viewer viewer to send a packet to
+         * @return true if the packet fits in the budget, false if it should be skipped
+         */
+        boolean take(Object viewer) {
+            if (sent >= tickBudget) {
+                skipped++;
+                return false;
+            }
+            Integer viewerSent = sentTo.get(viewer);
+            if (viewerSent != null && viewerSent >= playerBudget) {
+                skipped++;
+                return false;
+            }
+            sentTo.put(viewer, viewerSent == null ? 1 : viewerSent + 1);
+            sent++;
+            return true;
+        }
+
+        int getSent() {
+            return sent;
+        }
+
+        int getSkipped() {
+            return skipped;
+        }
+    }
+
+    private static final class EffectKey {
+
+        private final FrozenParticle particle;
+        private final int hashCode;
+
+        private EffectKey(FrozenParticle particle) {
+            this.particle = particle;
+            this.hashCode = particle.effectHashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EffectKey && particle.isSameEffect(((EffectKey) o).particle);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
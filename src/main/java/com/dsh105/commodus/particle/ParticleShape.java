@@ -0,0 +1,234 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.particle;
+
+import com.dsh105.commodus.Affirm;
+import com.dsh105.commodus.ServerUtil;
+import com.dsh105.commodus.packet.PacketBatch;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+
+/**
+ * A shape made of points, such as a line or circle of particles
+ * <p/>
+ * Points are passed straight to a {@link com.dsh105.commodus.particle.PointVisitor} as they are calculated, so no
+ * {@link org.bukkit.Location}s are created. Shapes can be shown directly with a {@link
+ * com.dsh105.commodus.particle.FrozenParticle}, or frozen into a {@link com.dsh105.commodus.particle.FrozenShape} to be
+ * redrawn without creating any packets at all.
+ */
+public abstract class ParticleShape {
+
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+
+    /**
+     * Passes each point of this shape to the given visitor
+     *
+     * @param visitor visitor to pass points to
+     */
+    public abstract void visit(PointVisitor visitor);
+
+    /**
+     * Gets the number of points in this shape
+     *
+     * @return number of points
+     */
+    public abstract int getPointCount();
+
+    /**
+     * Writes the points of this shape into an array, as consecutive x, y and z coordinates
+     *
+     * @param buffer array to write to. Must hold at least {@code 3 * getPointCount()} values
+     * @return number of points written
+     */
+    public int toCoordinates(final double[] buffer) {
+        Affirm.isTrue(buffer.length >= 3 * getPointCount(), "Buffer is too small for " + getPointCount() + " points");
+        final int[] index = new int[1];
+        visit(new PointVisitor() {
+            @Override
+            public void visit(double x, double y, double z) {
+                int i = index[0];
+                buffer[i] = x;
+                buffer[i + 1] = y;
+                buffer[i + 2] = z;
+                index[0] = i + 3;
+            }
+        });
+        return index[0] / 3;
+    }
+
+    /**
+     * Shows the given effect at every point of this shape
+     *
+     * @param particle effect to show. Only its position is ignored
+     * @param players  players to show the shape to
+     */
+    public void show(final FrozenParticle particle, final Collection<Player> players) {
+        visit(new PointVisitor() {
+            @Override
+            public void visit(double x, double y, double z) {
+                ServerUtil.sendPacket(particle.createPacketAt(x, y, z), players);
+            }
+        });
+    }
+
+    /**
+     * Queues the given effect at every point of this shape in a packet batch
+     *
+     * @param particle effect to show. Only its position is ignored
+     * @param batch    batch to add packets to
+     * @param players  players to show the shape to
+     */
+    public void show(final FrozenParticle particle, final PacketBatch batch, final Collection<? extends Player> players) {
+        visit(new PointVisitor() {
+            @Override
+            public void visit(double x, double y, double z) {
+                batch.add(particle.createPacketAt(x, y, z), players);
+            }
+        });
+    }
+
+    /**
+     * Builds a packet for every point of this shape, so it can be redrawn any number of times without creating more
+     *
+     * @param particle effect to show. Only its position is ignored
+     * @return this shape, frozen with the given effect
+     */
+    public FrozenShape freeze(final FrozenParticle particle) {
+        final Object[] packets = new Object[getPointCount()];
+        final int[] index = new int[1];
+        visit(new PointVisitor() {
+            @Override
+            public void visit(double x, double y, double z) {
+                packets[index[0]++] = particle.createPacketAt(x, y, z);
+            }
+        });
+        return new FrozenShape(particle.getWorld(), packets);
+    }
+
+    /**
+     * Creates a straight line of points between two positions, including both ends
+     *
+     * @param fromX  x coordinate of the start of the line
+     * @param fromY  y coordinate of the start of the line
+     * @param fromZ  z coordinate of the start of the line
+     * @param toX    x coordinate of the end of the line
+     * @param toY    y coordinate of the end of the line
+     * @param toZ    z coordinate of the end of the line
+     * @param points number of points. Must be positive
+     * @return line between the given positions
+     */
+    public static ParticleShape line(final double fromX, final double fromY, final double fromZ, final double toX, final double toY, final double toZ, final int points) {
+        Affirm.isTrue(points > 0, "Shapes must have at least one point");
+        return new ParticleShape() {
+            @Override
+            public void visit(PointVisitor visitor) {
+                double dx = toX - fromX, dy = toY - fromY, dz = toZ - fromZ;
+                double step = points == 1 ? 0 : 1D / (points - 1);
+                for (int i = 0; i < points; i++) {
+                    double t = i * step;
+                    visitor.visit(fromX + dx * t, fromY + dy * t, fromZ + dz * t);
+                }
+            }
+
+            @Override
+            public int getPointCount() {
+                return points;
+            }
+        };
+    }
+
+    /**
+     * Creates a horizontal circle of evenly spaced points
+     *
+     * @param centreX x coordinate of the centre
+     * @param centreY y coordinate of the centre
+     * @param centreZ z coordinate of the centre
+     * @param radius  radius of the circle
+     * @param points  number of points. Must be positive
+     * @return circle around the given centre
+     */
+    public static ParticleShape circle(double centreX, double centreY, double centreZ, double radius, int points) {
+        return helix(centreX, centreY, centreZ, radius, 0, 1, points);
+    }
+
+    /**
+     * Creates a helix of points rising from the given centre. Points are spread evenly along its length
+     *
+     * @param centreX x coordinate of the centre
+     * @param centreY y coordinate of the centre
+     * @param centreZ z coordinate of the centre
+     * @param radius  radius of the helix
+     * @param height  height of the helix
+     * @param turns   number of full turns made by the helix
+     * @param points  number of points. Must be positive
+     * @return helix rising from the given centre
+     */
+    public static ParticleShape helix(final double centreX, final double centreY, final double centreZ, final double radius, final double height, final double turns, final int points) {
+        Affirm.isTrue(points > 0, "Shapes must have at least one point");
+        return new ParticleShape() {
+            @Override
+            public void visit(PointVisitor visitor) {
+                // A closed circle shouldn't draw its first point twice
+                double divisor = height == 0 || points == 1 ? points : points - 1;
+                double angleStep = 2 * Math.PI * turns / divisor;
+                double heightStep = height / divisor;
+                for (int i = 0; i < points; i++) {
+                    double angle = i * angleStep;
+                    visitor.visit(centreX + radius * Math.cos(angle), centreY + i * heightStep, centreZ + radius * Math.sin(angle));
+                }
+            }
+
+            @Override
+            public int getPointCount() {
+                return points;
+            }
+        };
+    }
+
+    /**
+     * Creates a sphere of points, spread evenly over its surface
+     *
+     * @param centreX x coordinate of the centre
+     * @param centreY y coordinate of the centre
+     * @param centreZ z coordinate of the centre
+     * @param radius  radius of the sphere
+     * @param points  number of points. Must be positive
+     * @return sphere around the given centre
+     */
+    public static ParticleShape sphere(final double centreX, final double centreY, final double centreZ, final double radius, final int points) {
+        Affirm.isTrue(points > 0, "Shapes must have at least one point");
+        return new ParticleShape() {
+            @Override
+            public void visit(PointVisitor visitor) {
+                // Fibonacci lattice
+                for (int i = 0; i < points; i++) {
+                    double y = 1 - 2 * (i + 0.5) / points;
+                    double ringRadius = Math.sqrt(1 - y * y);
+                    double angle = i * GOLDEN_ANGLE;
+                    visitor.visit(centreX + radius * ringRadius * Math.cos(angle), centreY + radius * y, centreZ + radius * ringRadius * Math.sin(angle));
+                }
+            }
+
+            @Override
+            public int getPointCount() {
+                return points;
+            }
+        };
+    }
+}
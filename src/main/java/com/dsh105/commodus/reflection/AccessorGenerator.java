@@ -0,0 +1,569 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.reflection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates accessors for fields and methods that run at the speed of a direct call
+ * <p/>
+ * For public members of public classes, a small class is generated that reads the field or calls the method directly,
+ * avoiding the access checks, argument array copying and exception wrapping of {@link java.lang.reflect.Method#invoke(Object,
+ * Object...)} and {@link java.lang.reflect.Field#get(Object)}. Other members can't be linked against from generated code,
+ * so are accessed through a {@link java.lang.invoke.MethodHandle} instead.
+ * <p/>
+ * Generating an accessor is relatively expensive. Accessors are cached, but should be kept in a (static final) field
+ * rather than looked up whenever they are needed.
+ */
+public class AccessorGenerator {
+
+    private static final String GENERATED_PREFIX = "com.dsh105.commodus.reflection.GeneratedAccessor";
+    private static final AtomicInteger GENERATED_COUNT = new AtomicInteger();
+
+    private static final ConcurrentMap<Field, FieldGetter<?, ?>> FIELD_GETTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Method, MethodInvoker> METHOD_INVOKERS = new ConcurrentHashMap<>();
+
+    private AccessorGenerator() {
+    }
+
+    public static <T, V> FieldGetter<T, V> getFieldGetter(Class<T> clazz, String fieldName) {
+        return getFieldGetter(Reflection.getField(clazz, fieldName));
+    }
+
+    /**
+     * Gets an accessor reading the value of the given field
+     *
+     * @param field field to read
+     * @return accessor for the given field, or null if {@code field} is null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T, V> FieldGetter<T, V> getFieldGetter(Field field) {
+        if (field == null) {
+            return null;
+        }
+        FieldGetter<?, ?> getter = FIELD_GETTERS.get(field);
+        if (getter == null) {
+            getter = isLinkable(field.getDeclaringClass(), field.getModifiers()) ? generateFieldGetter(field) : null;
+            if (getter == null) {
+                getter = new HandleFieldGetter(field);
+            }
+            FieldGetter<?, ?> existing = FIELD_GETTERS.putIfAbsent(field, getter);
+            if (existing != null) {
+                getter = existing;
+            }
+        }
+        return (FieldGetter<T, V>) getter;
+    }
+
+    public static MethodInvoker getMethodInvoker(Class<?> clazz, String methodName, Class<?>... parameters) {
+        return getMethodInvoker(Reflection.getMethod(clazz, methodName, parameters));
+    }
+
+    /**
+     * Gets an accessor invoking the given method
+     *
+     * @param method method to invoke
+     * @return accessor for the given method, or null if {@code method} is null
+     */
+    public static MethodInvoker getMethodInvoker(Method method) {
+        if (method == null) {
+            return null;
+        }
+        MethodInvoker invoker = METHOD_INVOKERS.get(method);
+        if (invoker == null) {
+            invoker = isLinkable(method) ? generateMethodInvoker(method) : null;
+            if (invoker == null) {
+                invoker = new HandleMethodInvoker(method);
+            }
+            MethodInvoker existing = METHOD_INVOKERS.putIfAbsent(method, invoker);
+            if (existing != null) {
+                invoker = existing;
+            }
+        }
+        return invoker;
+    }
+
+    /**
+     * Returns whether the given accessor was generated, rather than backed by a {@link java.lang.invoke.MethodHandle}
+     *
+     * @param accessor accessor to check
+     * @return true if the accessor was generated
+     */
+    public static boolean isGenerated(Object accessor) {
+        return accessor != null && accessor.getClass().getName().startsWith(GENERATED_PREFIX);
+    }
+
+    private static boolean isLinkable(Class<?> declaringClass, int modifiers) {
+        return Modifier.isPublic(modifiers) && isLinkable(declaringClass);
+    }
+
+    private static boolean isLinkable(Method method) {
+        if (!isLinkable(method.getDeclaringClass(), method.getModifiers())) {
+            return false;
+        }
+        // Static interface methods need a newer class file version than is generated here
+        if (method.getDeclaringClass().isInterface() && Modifier.isStatic(method.getModifiers())) {
+            return false;
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (!isLinkable(parameterType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLinkable(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type.isPrimitive() || Modifier.isPublic(type.getModifiers());
+    }
+
+    private static FieldGetter<?, ?> generateFieldGetter(Field field) {
+        boolean isStatic = Modifier.isStatic(field.getModifiers());
+        Class<?> type = field.getType();
+        ClassWriter writer = new ClassWriter(FieldGetter.class);
+
+        // Object get(Object instance)
+        Code code = new Code();
+        if (!isStatic) {
+            code.op(ALOAD_1);
+            code.op(CHECKCAST).u2(writer.classRef(internalName(field.getDeclaringClass())));
+        }
+        code.op(isStatic ? GETSTATIC : GETFIELD).u2(writer.memberRef(FIELD_REF, field.getDeclaringClass(), field.getName(), descriptor(type)));
+        writer.box(code, type);
+        code.op(ARETURN);
+        writer.addMethod("get", "(Ljava/lang/Object;)Ljava/lang/Object;", code, 2, 1 + size(type));
+
+        return (FieldGetter<?, ?>) writer.define(field.getDeclaringClass().getClassLoader());
+    }
+
+    private static MethodInvoker generateMethodInvoker(Method method) {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        boolean isInterface = method.getDeclaringClass().isInterface();
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Class<?> returnType = method.getReturnType();
+        ClassWriter writer = new ClassWriter(MethodInvoker.class);
+
+        // Object invoke(Object instance, Object[] parameters)
+        Code code = new Code();
+        int stack = 0;
+        int maxStack = 1;
+        if (!isStatic) {
+            code.op(ALOAD_1);
+            code.op(CHECKCAST).u2(writer.classRef(internalName(method.getDeclaringClass())));
+            stack++;
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            code.op(ALOAD_2);
+            code.pushInt(i);
+            code.op(AALOAD);
+            maxStack = Math.max(maxStack, stack + 2);
+            writer.unbox(code, parameterTypes[i]);
+            stack += size(parameterTypes[i]);
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        String descriptor = descriptor(method);
+        if (isStatic) {
+            code.op(INVOKESTATIC).u2(writer.memberRef(METHOD_REF, method.getDeclaringClass(), method.getName(), descriptor));
+        } else if (isInterface) {
+            code.op(INVOKEINTERFACE).u2(writer.memberRef(INTERFACE_METHOD_REF, method.getDeclaringClass(), method.getName(), descriptor));
+            code.u1(stack).u1(0);
+        } else {
+            code.op(INVOKEVIRTUAL).u2(writer.memberRef(METHOD_REF, method.getDeclaringClass(), method.getName(), descriptor));
+        }
+
+        if (returnType == void.class) {
+            code.op(ACONST_NULL);
+        } else {
+            maxStack = Math.max(maxStack, size(returnType));
+            writer.box(code, returnType);
+        }
+        code.op(ARETURN);
+        writer.addMethod("invoke", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", code, maxStack, 3);
+
+        return (MethodInvoker) writer.define(method.getDeclaringClass().getClassLoader());
+    }
+
+    private static int size(Class<?> type) {
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    private static String internalName(Class<?> type) {
+        return type.isArray() ? descriptor(type) : type.getName().replace('.', '/');
+    }
+
+    private static String descriptor(Method method) {
+        StringBuilder builder = new StringBuilder("(");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            builder.append(descriptor(parameterType));
+        }
+        return builder.append(')').append(descriptor(method.getReturnType())).toString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isPrimitive()) {
+            return String.valueOf(PRIMITIVE_DESCRIPTORS.get(type));
+        }
+        if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        }
+        return "L" + internalName(type) + ";";
+    }
+
+    private static final Map<Class<?>, Character> PRIMITIVE_DESCRIPTORS = new HashMap<>();
+    private static final Map<Class<?>, Class<?>> WRAPPERS = new HashMap<>();
+
+    static {
+        addPrimitive(boolean.class, Boolean.class, 'Z');
+        addPrimitive(byte.class, Byte.class, 'B');
+        addPrimitive(char.class, Character.class, 'C');
+        addPrimitive(short.class, Short.class, 'S');
+        addPrimitive(int.class, Integer.class, 'I');
+        addPrimitive(long.class, Long.class, 'J');
+        addPrimitive(float.class, Float.class, 'F');
+        addPrimitive(double.class, Double.class, 'D');
+        PRIMITIVE_DESCRIPTORS.put(void.class, 'V');
+    }
+
+    private static void addPrimitive(Class<?> primitive, Class<?> wrapper, char descriptor) {
+        PRIMITIVE_DESCRIPTORS.put(primitive, descriptor);
+        WRAPPERS.put(primitive, wrapper);
+    }
+
+    private static final int ACONST_NULL = 0x01;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int AALOAD = 0x32;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int GETSTATIC = 0xb2;
+    private static final int GETFIELD = 0xb4;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int CHECKCAST = 0xc0;
+
+    private static final int UTF8 = 1;
+    private static final int CLASS = 7;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+
+    /**
+     * Writes a minimal class file implementing one accessor interface. The generated code never branches, so the
+     * class file version predates stack map frames and none are written
+     */
+    private static final class ClassWriter {
+
+        private static final int VERSION = 49;
+        private static final int ACC_PUBLIC = 0x0001;
+        private static final int ACC_FINAL = 0x0010;
+        private static final int ACC_SUPER = 0x0020;
+
+        private final Class<?> accessorInterface;
+        private final String name;
+
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> poolIndices = new HashMap<>();
+        private int poolCount = 1;
+
+        private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        private final DataOutputStream methods = new DataOutputStream(methodBytes);
+        private int methodCount;
+
+        private ClassWriter(Class<?> accessorInterface) {
+            this.accessorInterface = accessorInterface;
+            this.name = GENERATED_PREFIX + GENERATED_COUNT.incrementAndGet();
+
+            // public <init>() { super(); }
+            Code constructor = new Code();
+            constructor.op(ALOAD_0);
+            constructor.op(INVOKESPECIAL).u2(memberRef(METHOD_REF, "java/lang/Object", "<init>", "()V"));
+            constructor.op(RETURN);
+            addMethod("<init>", "()V", constructor, 1, 1);
+        }
+
+        private int utf8(String value) {
+            Integer index = poolIndices.get("U" + value);
+            if (index == null) {
+                try {
+                    pool.writeByte(UTF8);
+                    pool.writeUTF(value);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                index = poolCount++;
+                poolIndices.put("U" + value, index);
+            }
+            return index;
+        }
+
+        private int classRef(String internalName) {
+            Integer index = poolIndices.get("C" + internalName);
+            if (index == null) {
+                int nameIndex = utf8(internalName);
+                try {
+                    pool.writeByte(CLASS);
+                    pool.writeShort(nameIndex);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                index = poolCount++;
+                poolIndices.put("C" + internalName, index);
+            }
+            return index;
+        }
+
+        private int memberRef(int tag, Class<?> owner, String name, String descriptor) {
+            return memberRef(tag, internalName(owner), name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            String key = tag + owner + "." + name + descriptor;
+            Integer index = poolIndices.get(key);
+            if (index == null) {
+                int ownerIndex = classRef(owner);
+                int nameIndex = utf8(name);
+                int descriptorIndex = utf8(descriptor);
+                try {
+                    pool.writeByte(NAME_AND_TYPE);
+                    pool.writeShort(nameIndex);
+                    pool.writeShort(descriptorIndex);
+                    int nameAndTypeIndex = poolCount++;
+                    pool.writeByte(tag);
+                    pool.writeShort(ownerIndex);
+                    pool.writeShort(nameAndTypeIndex);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                index = poolCount++;
+                poolIndices.put(key, index);
+            }
+            return index;
+        }
+
+        private void box(Code code, Class<?> type) {
+            if (type.isPrimitive()) {
+                Class<?> wrapper = WRAPPERS.get(type);
+                code.op(INVOKESTATIC).u2(memberRef(METHOD_REF, wrapper, "valueOf", "(" + descriptor(type) + ")" + descriptor(wrapper)));
+            }
+        }
+
+        private void unbox(Code code, Class<?> type) {
+            if (type.isPrimitive()) {
+                Class<?> wrapper = WRAPPERS.get(type);
+                code.op(CHECKCAST).u2(classRef(internalName(wrapper)));
+                code.op(INVOKEVIRTUAL).u2(memberRef(METHOD_REF, wrapper, type.getName() + "Value", "()" + descriptor(type)));
+            } else if (type != Object.class) {
+                code.op(CHECKCAST).u2(classRef(internalName(type)));
+            }
+        }
+
+        private void addMethod(String name, String descriptor, Code code, int maxStack, int maxLocals) {
+            try {
+                methods.writeShort(ACC_PUBLIC);
+                methods.writeShort(utf8(name));
+                methods.writeShort(utf8(descriptor));
+                methods.writeShort(1);
+                methods.writeShort(utf8("Code"));
+                methods.writeInt(12 + code.bytes.size());
+                methods.writeShort(maxStack);
+                methods.writeShort(maxLocals);
+                methods.writeInt(code.bytes.size());
+                code.bytes.writeTo(methods);
+                // No exception table or attributes
+                methods.writeShort(0);
+                methods.writeShort(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            methodCount++;
+        }
+
+        private byte[] toByteArray() {
+            int thisClass = classRef(name.replace('.', '/'));
+            int superClass = classRef("java/lang/Object");
+            int interfaceClass = classRef(internalName(accessorInterface));
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(VERSION);
+                out.writeShort(poolCount);
+                poolBytes.writeTo(out);
+                out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(interfaceClass);
+                out.writeShort(0);
+                out.writeShort(methodCount);
+                methodBytes.writeTo(out);
+                out.writeShort(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private Object define(ClassLoader targetLoader) {
+            try {
+                return new AccessorLoader(targetLoader).define(name, toByteArray()).newInstance();
+            } catch (LinkageError | InstantiationException | IllegalAccessException e) {
+                // Fall back to a MethodHandle
+                return null;
+            }
+        }
+    }
+
+    private static final class Code {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private Code op(int opcode) {
+            return u1(opcode);
+        }
+
+        private Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        private Code u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        private Code pushInt(int value) {
+            if (value <= 5) {
+                return op(ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                return op(BIPUSH).u1(value);
+            }
+            return op(SIPUSH).u2(value);
+        }
+    }
+
+    /**
+     * Resolves the target's classes through the target's own class loader, and the accessor interfaces through ours
+     */
+    private static final class AccessorLoader extends ClassLoader {
+
+        private AccessorLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(FieldGetter.class.getName())) {
+                return FieldGetter.class;
+            }
+            if (name.equals(MethodInvoker.class.getName())) {
+                return MethodInvoker.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        private Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    private static final class HandleFieldGetter implements FieldGetter<Object, Object> {
+
+        private final MethodHandle handle;
+
+        private HandleFieldGetter(Field field) {
+            MethodHandle getter = Reflection.getFieldGetter(field);
+            if (getter == null) {
+                throw new IllegalArgumentException("Field is not accessible: " + field);
+            }
+            if (Modifier.isStatic(field.getModifiers())) {
+                getter = MethodHandles.dropArguments(getter, 0, Object.class);
+            }
+            this.handle = getter.asType(MethodType.methodType(Object.class, Object.class));
+        }
+
+        @Override
+        public Object get(Object instance) {
+            try {
+                return (Object) handle.invokeExact(instance);
+            } catch (Throwable throwable) {
+                throw AccessorGenerator.<RuntimeException>rethrow(throwable);
+            }
+        }
+    }
+
+    private static final class HandleMethodInvoker implements MethodInvoker {
+
+        private final MethodHandle handle;
+
+        private HandleMethodInvoker(Method method) {
+            MethodHandle invoker = Reflection.getMethodHandle(method);
+            if (invoker == null) {
+                throw new IllegalArgumentException("Method is not accessible: " + method);
+            }
+            if (Modifier.isStatic(method.getModifiers())) {
+                invoker = MethodHandles.dropArguments(invoker, 0, Object.class);
+            }
+            int parameterCount = method.getParameterTypes().length;
+            this.handle = invoker.asType(MethodType.genericMethodType(parameterCount + 1)).asSpreader(Object[].class, parameterCount);
+        }
+
+        @Override
+        public Object invoke(Object instance, Object... parameters) {
+            try {
+                return (Object) handle.invokeExact(instance, parameters);
+            } catch (Throwable throwable) {
+                throw AccessorGenerator.<RuntimeException>rethrow(throwable);
+            }
+        }
+    }
+
+    // Exceptions are passed through unwrapped, the same as they are from generated accessors
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E rethrow(Throwable throwable) throws E {
+        throw (E) throwable;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.reflection;
+
+/**
+ * Reads the value of a field. Instances are created by {@link com.dsh105.commodus.reflection.AccessorGenerator}
+ *
+ * @param <T> type declaring the field
+ * @param <V> type of the field's value. Primitive values are boxed
+ */
+public interface FieldGetter<T, V> {
+
+    /**
+     * Gets the value of the field
+     *
+     * @param instance instance to read the field of, or null for static fields
+     * @return value of the field
+     */
+    V get(T instance);
+}
@@ -0,0 +1,35 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.reflection;
+
+/**
+ * Invokes a method. Instances are created by {@link com.dsh105.commodus.reflection.AccessorGenerator}
+ * <p/>
+ * Unlike {@link java.lang.reflect.Method#invoke(Object, Object...)}, exceptions thrown by the method are not wrapped
+ */
+public interface MethodInvoker {
+
+    /**
+     * Invokes the method
+     *
+     * @param instance   instance to invoke the method on, or null for static methods
+     * @param parameters parameters to pass to the method. Primitive parameters are unboxed
+     * @return value returned by the method, boxed if primitive. Void methods return null
+     */
+    Object invoke(Object instance, Object... parameters);
+}
@@ -20,50 +20,74 @@ package com.dsh105.commodus.reflection;
 import com.dsh105.commodus.ServerUtil;
 import com.dsh105.commodus.exceptions.RemapperUnavailableException;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Simple reflection utilities, built from a Minecraft-oriented perspective
  * <p/>
  * Supports MCPC+/Cauldron remappings, through the {@link com.dsh105.commodus.reflection.RemappedClassLoader}
+ * <p/>
+ * All lookups are cached and safe to use from any thread. Methods and fields may also be retrieved as {@link
+ * java.lang.invoke.MethodHandle}s - when held in a static final field, these can be inlined by the JIT
  */
 public class Reflection {
 
-    private static RemappedClassLoader REMAPPED_CLASS_LOADER;
-    private static boolean INITIALISED;
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static volatile RemappedClassLoader REMAPPED_CLASS_LOADER;
+    private static volatile boolean INITIALISED;
+    private static boolean INITIALISING;
+
+    private static final ConcurrentMap<String, Class<?>> LOADED_CLASSES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<MethodSignature, Method> LOADED_METHODS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<String, Field>> LOADED_FIELDS = new ConcurrentHashMap<>();
 
-    private static Map<String, Class> LOADED_CLASSES = new HashMap<>();
-    private static Map<Class, Map<String, Map<Class<?>[], Method>>> LOADED_METHODS = new HashMap<>();
-    private static Map<Class, Map<String, Field>> LOADED_FIELDS = new HashMap<>();
+    private static final ConcurrentMap<Method, MethodHandle> METHOD_HANDLES = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Field, MethodHandle> FIELD_GETTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Field, MethodHandle> FIELD_SETTERS = new ConcurrentHashMap<>();
 
     private static RemappedClassLoader getRemappedClassLoader() {
-        if (!INITIALISED && REMAPPED_CLASS_LOADER == null) {
-            INITIALISED = true;
-            try {
-                REMAPPED_CLASS_LOADER = new RemappedClassLoader();
-            } catch (RemapperUnavailableException ignored) {
-                // Cauldron probably isn't enabled
-                REMAPPED_CLASS_LOADER = null;
+        if (!INITIALISED) {
+            synchronized (Reflection.class) {
+                // The remapper uses Reflection itself while it's being set up
+                if (!INITIALISED && !INITIALISING) {
+                    INITIALISING = true;
+                    try {
+                        REMAPPED_CLASS_LOADER = new RemappedClassLoader();
+                    } catch (RemapperUnavailableException ignored) {
+                        // Cauldron probably isn't enabled
+                        REMAPPED_CLASS_LOADER = null;
+                    } finally {
+                        INITIALISING = false;
+                        INITIALISED = true;
+                    }
+                }
             }
         }
         return REMAPPED_CLASS_LOADER;
     }
 
     public static Class<?> getClass(String className) {
-        if (LOADED_CLASSES.containsKey(className)) {
-            return LOADED_CLASSES.get(className);
+        Class<?> loaded = LOADED_CLASSES.get(className);
+        if (loaded != null) {
+            return loaded;
         }
         try {
             Class clazz = Class.forName(className);
             if (clazz != null) {
-                LOADED_CLASSES.put(className, clazz);
+                LOADED_CLASSES.putIfAbsent(className, clazz);
             }
             return clazz;
         } catch (ClassNotFoundException e) {
@@ -95,37 +119,52 @@ public class Reflection {
     }
 
     public static Method getMethod(Class<?> clazz, String methodName, Class<?>... parameters) {
-        if (getRemappedClassLoader() != null) {
-            methodName = getRemappedClassLoader().getRemappedMethodName(clazz, methodName, parameters);
+        Class<?>[] params = parameters == null ? new Class<?>[0] : parameters;
+        Method method = getLoadedMethod(clazz, methodName, params);
+        if (method != null) {
+            return method;
         }
 
-        Class<?>[] params = parameters == null ? new Class<?>[0] : parameters;
-        Map<String, Map<Class<?>[], Method>> loadedMethodNames = getLoadedMethods(clazz);
-        Map<Class<?>[], Method> loadedMethodParams = getLoadedMethods(clazz, methodName);
+        // Cached against the name asked for, so that remapping is only ever done once
+        String remappedName = methodName;
+        if (getRemappedClassLoader() != null) {
+            remappedName = getRemappedClassLoader().getRemappedMethodName(clazz, methodName, params);
+        }
 
-        Method method = getLoadedMethod(clazz, methodName, params);
-        if (method == null) {
-            try {
-                method = clazz.getDeclaredMethod(methodName, parameters);
-                method.setAccessible(true);
-            } catch (NoSuchMethodException e) {
-                e.printStackTrace();
-            }
+        try {
+            method = clazz.getDeclaredMethod(remappedName, params);
+            method.setAccessible(true);
+            LOADED_METHODS.putIfAbsent(new MethodSignature(clazz, methodName, params.clone()), method);
+        } catch (NoSuchMethodException e) {
+            e.printStackTrace();
         }
-        loadedMethodParams.put(params, method);
-        loadedMethodNames.put(methodName, loadedMethodParams);
-        LOADED_METHODS.put(clazz, loadedMethodNames);
         return method;
     }
 
+    /**
+     * @deprecated methods are no longer cached in this structure. This returns a snapshot of the cache
+     */
+    @Deprecated
     public static Map<String, Map<Class<?>[], Method>> getLoadedMethods(Class<?> clazz) {
-        Map<String, Map<Class<?>[], Method>> loadedMethods = LOADED_METHODS.get(clazz);
-        if (loadedMethods == null) {
-            loadedMethods = new HashMap<>();
+        Map<String, Map<Class<?>[], Method>> loadedMethods = new HashMap<>();
+        for (Map.Entry<MethodSignature, Method> entry : LOADED_METHODS.entrySet()) {
+            MethodSignature signature = entry.getKey();
+            if (signature.clazz == clazz) {
+                Map<Class<?>[], Method> loadedMethodParams = loadedMethods.get(signature.name);
+                if (loadedMethodParams == null) {
+                    loadedMethodParams = new HashMap<>();
+                    loadedMethods.put(signature.name, loadedMethodParams);
+                }
+                loadedMethodParams.put(signature.parameters.clone(), entry.getValue());
+            }
         }
         return loadedMethods;
     }
 
+    /**
+     * @deprecated methods are no longer cached in this structure. This returns a snapshot of the cache
+     */
+    @Deprecated
     public static Map<Class<?>[], Method> getLoadedMethods(Class<?> clazz, String methodName) {
         Map<Class<?>[], Method> loadedMethods = getLoadedMethods(clazz).get(methodName);
         if (loadedMethods == null) {
@@ -135,27 +174,28 @@ public class Reflection {
     }
 
     public static Method getLoadedMethod(Class<?> clazz, String methodName, Class<?>... parameters) {
-        return getLoadedMethods(clazz, methodName).get(parameters);
+        return LOADED_METHODS.get(new MethodSignature(clazz, methodName, parameters == null ? new Class<?>[0] : parameters));
     }
 
     public static Field getField(Class<?> clazz, String fieldName) {
-        if (getRemappedClassLoader() != null) {
-            fieldName = getRemappedClassLoader().getRemappedFieldName(clazz, fieldName);
+        Map<String, Field> loadedFields = getLoadedFields(clazz);
+        Field field = loadedFields.get(fieldName);
+        if (field != null) {
+            return field;
         }
 
-        Map<String, Field> loadedFields = getLoadedFields(clazz);
-        if (loadedFields.containsKey(fieldName)) {
-            return loadedFields.get(fieldName);
+        String remappedName = fieldName;
+        if (getRemappedClassLoader() != null) {
+            remappedName = getRemappedClassLoader().getRemappedFieldName(clazz, fieldName);
         }
-        Field field = null;
+
         try {
-            field = clazz.getDeclaredField(fieldName);
+            field = clazz.getDeclaredField(remappedName);
             field.setAccessible(true);
+            loadedFields.put(fieldName, field);
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         }
-        loadedFields.put(fieldName, field);
-        LOADED_FIELDS.put(clazz, loadedFields);
         return field;
     }
 
@@ -177,13 +217,80 @@ public class Reflection {
     }
 
     public static Map<String, Field> getLoadedFields(Class<?> clazz) {
-        Map<String, Field> loadedFields = LOADED_FIELDS.get(clazz);
+        ConcurrentMap<String, Field> loadedFields = LOADED_FIELDS.get(clazz);
         if (loadedFields == null) {
-            loadedFields = new HashMap<>();
+            loadedFields = new ConcurrentHashMap<>();
+            ConcurrentMap<String, Field> existing = LOADED_FIELDS.putIfAbsent(clazz, loadedFields);
+            if (existing != null) {
+                loadedFields = existing;
+            }
         }
         return loadedFields;
     }
 
+    public static MethodHandle getMethodHandle(Class<?> clazz, String methodName, Class<?>... parameters) {
+        return getMethodHandle(getMethod(clazz, methodName, parameters));
+    }
+
+    public static MethodHandle getMethodHandle(Method method) {
+        if (method == null) {
+            return null;
+        }
+        MethodHandle handle = METHOD_HANDLES.get(method);
+        if (handle == null) {
+            try {
+                method.setAccessible(true);
+                handle = LOOKUP.unreflect(method);
+                METHOD_HANDLES.putIfAbsent(method, handle);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+        return handle;
+    }
+
+    public static MethodHandle getFieldGetter(Class<?> clazz, String fieldName) {
+        return getFieldGetter(getField(clazz, fieldName));
+    }
+
+    public static MethodHandle getFieldGetter(Field field) {
+        if (field == null) {
+            return null;
+        }
+        MethodHandle handle = FIELD_GETTERS.get(field);
+        if (handle == null) {
+            try {
+                field.setAccessible(true);
+                handle = LOOKUP.unreflectGetter(field);
+                FIELD_GETTERS.putIfAbsent(field, handle);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+        return handle;
+    }
+
+    public static MethodHandle getFieldSetter(Class<?> clazz, String fieldName) {
+        return getFieldSetter(getField(clazz, fieldName));
+    }
+
+    public static MethodHandle getFieldSetter(Field field) {
+        if (field == null) {
+            return null;
+        }
+        MethodHandle handle = FIELD_SETTERS.get(field);
+        if (handle == null) {
+            try {
+                field.setAccessible(true);
+                handle = LOOKUP.unreflectSetter(field);
+                FIELD_SETTERS.putIfAbsent(field, handle);
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+        return handle;
+    }
+
     public static Object invoke(Method method, Object instance, Object... parameters) {
         if (method == null) {
             return null;
@@ -233,4 +340,37 @@ public class Reflection {
         }
         return classParams;
     }
+
+    // Methods are looked up by value, rather than by the identity of their parameter array
+    static final class MethodSignature {
+
+        private final Class<?> clazz;
+        private final String name;
+        private final Class<?>[] parameters;
+        private final int hashCode;
+
+        MethodSignature(Class<?> clazz, String name, Class<?>[] parameters) {
+            this.clazz = clazz;
+            this.name = name;
+            this.parameters = parameters;
+            this.hashCode = 31 * (31 * clazz.hashCode() + name.hashCode()) + Arrays.hashCode(parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MethodSignature)) {
+                return false;
+            }
+            MethodSignature other = (MethodSignature) o;
+            return clazz == other.clazz && name.equals(other.name) && Arrays.equals(parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
 }
\ No newline at end of file
@@ -21,7 +21,9 @@ import com.dsh105.commodus.ServerUtil;
 import com.dsh105.commodus.exceptions.RemapperUnavailableException;
 
 import java.lang.reflect.Method;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Accesses Cauldron/MCPC remapping for classes, fields and methods
@@ -49,6 +51,16 @@ public class RemappedClassLoader {
     private Map<String, String> remappedFields;
     private Map<String, String> remappedMethods;
 
+    // Indexes built from the above, as the mappings hold tens of thousands of entries
+    private Map<String, String> unmappedClasses;
+    private Map<String, Set<String>> remappedMethodsByName;
+
+    // Names that have already been resolved
+    private final ConcurrentMap<String, String> remappedClassNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, String> unmappedClassNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, String>> remappedFieldNames = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Reflection.MethodSignature, String> remappedMethodNames = new ConcurrentHashMap<>();
+
     public RemappedClassLoader() {
         this(RemappedClassLoader.class.getClassLoader());
     }
@@ -91,6 +103,30 @@ public class RemappedClassLoader {
         remappedClasses = (Map<String, String>) Reflection.getFieldValue(jarMapping, "classes");
         remappedFields = (Map<String, String>) Reflection.getFieldValue(jarMapping, "fields");
         remappedMethods = (Map<String, String>) Reflection.getFieldValue(jarMapping, "methods");
+
+        unmappedClasses = new HashMap<>(remappedClasses.size());
+        for (Map.Entry<String, String> entry : remappedClasses.entrySet()) {
+            // Keep the first mapping found, as the original linear search did
+            if (!unmappedClasses.containsKey(entry.getValue())) {
+                unmappedClasses.put(entry.getValue(), entry.getKey());
+            }
+        }
+
+        // Method mappings are keyed by "owner/name descriptor"
+        remappedMethodsByName = new HashMap<>();
+        for (Map.Entry<String, String> entry : remappedMethods.entrySet()) {
+            int descriptorIndex = entry.getKey().indexOf(' ');
+            if (descriptorIndex < 0) {
+                continue;
+            }
+            String ownerAndName = entry.getKey().substring(0, descriptorIndex);
+            Set<String> candidates = remappedMethodsByName.get(ownerAndName);
+            if (candidates == null) {
+                candidates = new LinkedHashSet<>(2);
+                remappedMethodsByName.put(ownerAndName, candidates);
+            }
+            candidates.add(entry.getValue());
+        }
     }
 
     public Class<?> loadClass(String canonicalName) throws ClassNotFoundException {
@@ -103,17 +139,45 @@ public class RemappedClassLoader {
     }
 
     public String getRemappedFieldName(Class<?> clazz, String fieldName) {
-        return (String) Reflection.invoke(mapField, classRemapper, getUnmappedClassName(clazz), fieldName, null, -1);
+        ConcurrentMap<String, String> fieldNames = remappedFieldNames.get(clazz);
+        if (fieldNames == null) {
+            fieldNames = new ConcurrentHashMap<>();
+            ConcurrentMap<String, String> existing = remappedFieldNames.putIfAbsent(clazz, fieldNames);
+            if (existing != null) {
+                fieldNames = existing;
+            }
+        }
+
+        String remappedName = fieldNames.get(fieldName);
+        if (remappedName == null) {
+            remappedName = (String) Reflection.invoke(mapField, classRemapper, getUnmappedClassName(clazz), fieldName, null, -1);
+            if (remappedName == null) {
+                return fieldName;
+            }
+            fieldNames.putIfAbsent(fieldName, remappedName);
+        }
+        return remappedName;
     }
 
     public String getRemappedMethodName(Class<?> clazz, String methodName, Class<?>... args) {
-        String path = getUnmappedClassName(clazz) + "/" + methodName + " ";
-        for (Map.Entry<String, String> entry : remappedMethods.entrySet()) {
-            if (entry.getKey().startsWith(path)) {
+        Class<?>[] params = args == null ? new Class<?>[0] : args;
+        Reflection.MethodSignature signature = new Reflection.MethodSignature(clazz, methodName, params);
+        String remappedName = remappedMethodNames.get(signature);
+        if (remappedName == null) {
+            remappedName = findRemappedMethodName(clazz, methodName, params);
+            remappedMethodNames.putIfAbsent(new Reflection.MethodSignature(clazz, methodName, params.clone()), remappedName);
+        }
+        return remappedName;
+    }
+
+    private String findRemappedMethodName(Class<?> clazz, String methodName, Class<?>[] args) {
+        Set<String> candidates = remappedMethodsByName.get(getUnmappedClassName(clazz) + "/" + methodName);
+        if (candidates != null) {
+            for (String candidate : candidates) {
                 try {
-                    clazz.getDeclaredMethod(entry.getValue(), args);
+                    clazz.getDeclaredMethod(candidate, args);
                     // This looks like the one
-                    return entry.getValue();
+                    return candidate;
                 } catch (NoSuchMethodException ignored) {
                     // Nope...
                 }
@@ -123,20 +187,28 @@ public class RemappedClassLoader {
     }
 
     private String getRemappedClassName(String canonicalName) {
-        try {
-            return ((String) Reflection.invoke(mapType, classRemapper, canonicalName.replace('.', '/'))).replace('/', '.');
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to remap class name: " + canonicalName);
+        String remappedName = remappedClassNames.get(canonicalName);
+        if (remappedName == null) {
+            try {
+                remappedName = ((String) Reflection.invoke(mapType, classRemapper, canonicalName.replace('.', '/'))).replace('/', '.');
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to remap class name: " + canonicalName);
+            }
+            remappedClassNames.putIfAbsent(canonicalName, remappedName);
         }
+        return remappedName;
     }
 
     private String getUnmappedClassName(Class<?> clazz) {
-        String remappedCanonicalName = clazz.getCanonicalName().replace('.', '/');
-        for (Map.Entry<String, String> entry : remappedClasses.entrySet()) {
-            if (entry.getValue().equals(remappedCanonicalName)) {
-                return entry.getKey();
+        String unmappedName = unmappedClassNames.get(clazz);
+        if (unmappedName == null) {
+            String remappedCanonicalName = clazz.getCanonicalName().replace('.', '/');
+            unmappedName = unmappedClasses.get(remappedCanonicalName);
+            if (unmappedName == null) {
+                unmappedName = remappedCanonicalName;
             }
+            unmappedClassNames.putIfAbsent(clazz, unmappedName);
         }
-        return remappedCanonicalName;
+        return unmappedName;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+/**
+ * A box with edges parallel to the axes
+ */
+public final class AxisAlignedBox implements Region {
+
+    private final double minX, minY, minZ;
+    private final double maxX, maxY, maxZ;
+
+    /**
+     * Constructs a new box between two corners, in any order
+     */
+    public AxisAlignedBox(double x1, double y1, double z1, double x2, double y2, double z2) {
+        this.minX = Math.min(x1, x2);
+        this.minY = Math.min(y1, y2);
+        this.minZ = Math.min(z1, z2);
+        this.maxX = Math.max(x1, x2);
+        this.maxY = Math.max(y1, y2);
+        this.maxZ = Math.max(z1, z2);
+    }
+
+    @Override
+    public boolean contains(double x, double y, double z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    @Override
+    public double raycast(double originX, double originY, double originZ, double directionX, double directionY, double directionZ) {
+        // Slab method - narrow the range of the ray inside the box one axis at a time
+        double tMin = Math.max(0, Math.max(entry(originX, directionX, minX, maxX), Math.max(entry(originY, directionY, minY, maxY), entry(originZ, directionZ, minZ, maxZ))));
+        double tMax = Math.min(exit(originX, directionX, minX, maxX), Math.min(exit(originY, directionY, minY, maxY), exit(originZ, directionZ, minZ, maxZ)));
+        return tMin <= tMax ? tMin : -1;
+    }
+
+    /**
+     * Gets the distance along a ray at which it enters the slab between two planes along one axis
+     *
+     * @return distance at which the ray enters the slab. Negative infinity if it is always inside, and positive
+     * infinity if it never enters
+     */
+    static double entry(double origin, double direction, double min, double max) {
+        if (direction == 0) {
+            return origin >= min && origin <= max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return Math.min((min - origin) / direction, (max - origin) / direction);
+    }
+
+    /**
+     * Gets the distance along a ray at which it leaves the slab between two planes along one axis
+     *
+     * @return distance at which the ray leaves the slab. Positive infinity if it is always inside, and negative
+     * infinity if it never enters
+     */
+    static double exit(double origin, double direction, double min, double max) {
+        if (direction == 0) {
+            return origin >= min && origin <= max ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+        }
+        return Math.max((min - origin) / direction, (max - origin) / direction);
+    }
+
+    @Override
+    public double getMinX() {
+        return minX;
+    }
+
+    @Override
+    public double getMinY() {
+        return minY;
+    }
+
+    @Override
+    public double getMinZ() {
+        return minZ;
+    }
+
+    @Override
+    public double getMaxX() {
+        return maxX;
+    }
+
+    @Override
+    public double getMaxY() {
+        return maxY;
+    }
+
+    @Override
+    public double getMaxZ() {
+        return maxZ;
+    }
+
+    @Override
+    public String toString() {
+        return "AxisAlignedBox{min=" + minX + "," + minY + "," + minZ + ", max=" + maxX + "," + maxY + "," + maxZ + "}";
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+import com.dsh105.commodus.Affirm;
+
+/**
+ * A vertical cylinder, standing on its base
+ */
+public final class Cylinder implements Region {
+
+    private final double centreX, centreZ;
+    private final double minY, maxY;
+    private final double radius;
+    private final double radiusSquared;
+
+    /**
+     * Constructs a new cylinder
+     *
+     * @param baseX  x coordinate of the centre of the base
+     * @param baseY  y coordinate of the base
+     * @param baseZ  z coordinate of the centre of the base
+     * @param radius radius of the cylinder
+     * @param height height of the cylinder
+     */
+    public Cylinder(double baseX, double baseY, double baseZ, double radius, double height) {
+        Affirm.isTrue(radius >= 0, "Radius must not be negative");
+        Affirm.isTrue(height >= 0, "Height must not be negative");
+        this.centreX = baseX;
+        this.centreZ = baseZ;
+        this.minY = baseY;
+        this.maxY = baseY + height;
+        this.radius = radius;
+        this.radiusSquared = radius * radius;
+    }
+
+    @Override
+    public boolean contains(double x, double y, double z) {
+        if (y < minY || y > maxY) {
+            return false;
+        }
+        double dx = x - centreX, dz = z - centreZ;
+        return dx * dx + dz * dz <= radiusSquared;
+    }
+
+    @Override
+    public double raycast(double originX, double originY, double originZ, double directionX, double directionY, double directionZ) {
+        double tMin = Math.max(0, AxisAlignedBox.entry(originY, directionY, minY, maxY));
+        double tMax = AxisAlignedBox.exit(originY, directionY, minY, maxY);
+        if (tMin > tMax) {
+            return -1;
+        }
+
+        // Where the ray is within the circle, seen from above
+        double ox = originX - centreX, oz = originZ - centreZ;
+        double a = directionX * directionX + directionZ * directionZ;
+        double c = ox * ox + oz * oz - radiusSquared;
+        if (a == 0) {
+            // Travelling straight up or down
+            return c <= 0 ? tMin : -1;
+        }
+        double b = 2 * (ox * directionX + oz * directionZ);
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+            return -1;
+        }
+        double root = Math.sqrt(discriminant);
+        double enter = Math.max(tMin, (-b - root) / (2 * a));
+        double exit = Math.min(tMax, (-b + root) / (2 * a));
+        return enter <= exit ? enter : -1;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public double getHeight() {
+        return maxY - minY;
+    }
+
+    @Override
+    public double getMinX() {
+        return centreX - radius;
+    }
+
+    @Override
+    public double getMinY() {
+        return minY;
+    }
+
+    @Override
+    public double getMinZ() {
+        return centreZ - radius;
+    }
+
+    @Override
+    public double getMaxX() {
+        return centreX + radius;
+    }
+
+    @Override
+    public double getMaxY() {
+        return maxY;
+    }
+
+    @Override
+    public double getMaxZ() {
+        return centreZ + radius;
+    }
+
+    @Override
+    public String toString() {
+        return "Cylinder{base=" + centreX + "," + minY + "," + centreZ + ", radius=" + radius + ", height=" + getHeight() + "}";
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.EntityTeleportEvent;
+import org.bukkit.event.entity.ItemSpawnEvent;
+import org.bukkit.event.entity.ProjectileLaunchEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.vehicle.VehicleCreateEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of entities by world, type and chunk, so that finding nearby entities only looks at entities of the right type
+ * in nearby chunks
+ * <p/>
+ * Bukkit has no event for entity movement, so the index is kept up to date in several ways:
+ * <ul>
+ * <li>Entities are added as creatures and items spawn, projectiles are launched, vehicles are placed, players join or
+ * chunks load, and removed when their chunk unloads. Teleported entities are moved straight away</li>
+ * <li>Every {@link #getRefreshPeriod()} ticks, the chunk of each indexed entity is updated and dead entities are
+ * removed</li>
+ * <li>Every {@link #getRescanPeriod()} ticks, each world is scanned for entities that were added without an event, such
+ * as falling blocks</li>
+ * </ul>
+ * Indexed positions may therefore be up to {@link #getRefreshPeriod()} ticks old. To make up for this, queries also
+ * look {@value #REFRESH_MARGIN} blocks beyond the area asked for, and check every result against the exact position of
+ * the entity. Entities that have moved further than that since the last refresh, and entities added without an event
+ * since the last rescan, may be missing from results. The index is used by
+ * {@link com.dsh105.commodus.GeometryUtil#getNearbyEntities(Class, org.bukkit.Location, int)} while enabled, and must
+ * only be used from the main server thread.
+ */
+public class EntitySpatialIndex {
+
+    private static final Map<UUID, Map<EntityType, SpatialGrid<Entity>>> GRIDS = new HashMap<>();
+    private static final Map<Entity, UUID> ENTITY_WORLDS = new HashMap<>();
+
+    // Entity types that may hold instances of each class queried for
+    private static final ConcurrentMap<Class<?>, Set<EntityType>> TYPES_BY_CLASS = new ConcurrentHashMap<>();
+
+    /**
+     * Distance beyond the area of each query that is searched for entities that moved since the last refresh
+     */
+    public static final int REFRESH_MARGIN = 16;
+
+    // A second, covering anything moving up to REFRESH_MARGIN blocks per second, e.g. sprinting players and ridden horses
+    private static long REFRESH_PERIOD = 20L;
+    private static long RESCAN_PERIOD = 200L;
+
+    private static Listener LISTENER;
+    private static BukkitTask REFRESH_TASK;
+    private static BukkitTask RESCAN_TASK;
+
+    // Reused for every position read during a refresh
+    private static final Location LOCATION = new Location(null, 0, 0, 0);
+
+    private EntitySpatialIndex() {
+    }
+
+    public static long getRefreshPeriod() {
+        return REFRESH_PERIOD;
+    }
+
+    public static long getRescanPeriod() {
+        return RESCAN_PERIOD;
+    }
+
+    /**
+     * Sets how often indexed entities are moved to their current chunk. Takes effect the next time the index is enabled
+     * <p/>
+     * Each refresh looks up the position of every indexed entity. Shorter periods cost more, but miss fewer fast-moving
+     * entities
+     *
+     * @param refreshPeriod ticks between refreshes
+     */
+    public static synchronized void setRefreshPeriod(long refreshPeriod) {
+        REFRESH_PERIOD = Math.max(1L, refreshPeriod);
+    }
+
+    /**
+     * Sets how often worlds are scanned for entities missing from the index. Takes effect the next time the index is
+     * enabled
+     *
+     * @param rescanPeriod ticks between scans
+     */
+    public static synchronized void setRescanPeriod(long rescanPeriod) {
+        RESCAN_PERIOD = Math.max(1L, rescanPeriod);
+    }
+
+    /**
+     * Enables the index. It is disabled automatically when the given plugin is disabled
+     *
+     * @param plugin plugin to register listeners and tasks with
+     */
+    public static synchronized void enable(final Plugin plugin) {
+        if (LISTENER != null) {
+            return;
+        }
+
+        Listener listener = new Listener() {
+
+            @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+            public void onCreatureSpawn(CreatureSpawnEvent event) {
+                add(event.getEntity(), event.getLocation());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+            public void onItemSpawn(ItemSpawnEvent event) {
+                add(event.getEntity(), event.getLocation());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+            public void onProjectileLaunch(ProjectileLaunchEvent event) {
+                add(event.getEntity(), event.getEntity().getLocation(LOCATION));
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onVehicleCreate(VehicleCreateEvent event) {
+                add(event.getVehicle(), event.getVehicle().getLocation(LOCATION));
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+            public void onTeleport(EntityTeleportEvent event) {
+                add(event.getEntity(), event.getTo());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+            public void onPlayerTeleport(PlayerTeleportEvent event) {
+                add(event.getPlayer(), event.getTo());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onJoin(PlayerJoinEvent event) {
+                add(event.getPlayer(), event.getPlayer().getLocation());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onQuit(PlayerQuitEvent event) {
+                remove(event.getPlayer());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onChunkLoad(ChunkLoadEvent event) {
+                for (Entity entity : event.getChunk().getEntities()) {
+                    add(entity, entity.getLocation(LOCATION));
+                }
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+            public void onChunkUnload(ChunkUnloadEvent event) {
+                for (Entity entity : event.getChunk().getEntities()) {
+                    if (!(entity instanceof Player)) {
+                        remove(entity);
+                    }
+                }
+            }
+
+            @EventHandler
+            public void onDisable(PluginDisableEvent event) {
+                if (event.getPlugin() == plugin) {
+                    disable();
+                }
+            }
+        };
+        Bukkit.getPluginManager().registerEvents(listener, plugin);
+        REFRESH_TASK = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, REFRESH_PERIOD, REFRESH_PERIOD);
+        RESCAN_TASK = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
+            @Override
+            public void run() {
+                rescan();
+            }
+        }, RESCAN_PERIOD, RESCAN_PERIOD);
+        LISTENER = listener;
+        rescan();
+    }
+
+    /**
+     * Disables the index enabled by {@link #enable(org.bukkit.plugin.Plugin)}
+     */
+    public static synchronized void disable() {
+        if (LISTENER != null) {
+            HandlerList.unregisterAll(LISTENER);
+            REFRESH_TASK.cancel();
+            RESCAN_TASK.cancel();
+            LISTENER = null;
+            REFRESH_TASK = null;
+            RESCAN_TASK = null;
+            GRIDS.clear();
+            ENTITY_WORLDS.clear();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return LISTENER != null;
+    }
+
+    /**
+     * Returns a list of entities near a given location, using the same bounds as {@link
+     * com.dsh105.commodus.GeometryUtil#isInBorder(org.bukkit.Location, org.bukkit.Location, int)}
+     *
+     * @param entityType type (or super-type) of entity to include in the search
+     * @param origin     origin or centre of the area to search
+     * @param range      range to search within. If {@code range <= 0}, every entity of the type in the world is
+     *                   included
+     * @param <T>        entity restriction to place on the search
+     * @return a list of nearby entities
+     */
+    public static <T extends Entity> List<T> getNearbyEntities(Class<T> entityType, Location origin, int range) {
+        World world = origin.getWorld();
+        if (range <= 0) {
+            return getEntities(entityType, world);
+        }
+        int x = origin.getBlockX(), z = origin.getBlockZ();
+        // isInBorder excludes the edges of the range
+        List<T> entities = new ArrayList<>();
+        for (Entity entity : collect(entityType, world, x - range + 1, z - range + 1, x + range - 1, z + range - 1)) {
+            // Collected from beyond the range, so check it properly
+            entity.getLocation(LOCATION);
+            int entityX = LOCATION.getBlockX(), entityZ = LOCATION.getBlockZ();
+            if (entityX > x - range && entityX < x + range && entityZ > z - range && entityZ < z + range) {
+                entities.add(entityType.cast(entity));
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Returns a list of entities inside a region
+     *
+     * @param entityType type (or super-type) of entity to include in the search
+     * @param world      world to search
+     * @param region     region to search within
+     * @param <T>        entity restriction to place on the search
+     * @return a list of entities inside the given region
+     */
+    public static <T extends Entity> List<T> getEntitiesInRegion(Class<T> entityType, World world, Region region) {
+        List<T> entities = new ArrayList<>();
+        for (Entity entity : collect(entityType, world, floor(region.getMinX()), floor(region.getMinZ()), floor(region.getMaxX()), floor(region.getMaxZ()))) {
+            entity.getLocation(LOCATION);
+            if (region.contains(LOCATION.getX(), LOCATION.getY(), LOCATION.getZ())) {
+                entities.add(entityType.cast(entity));
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * Returns a list of entities inside a box
+     *
+     * @param entityType type (or super-type) of entity to include in the search
+     * @param world      world to search
+     * @param <T>        entity restriction to place on the search
+     * @return a list of entities inside the given box, with bounds inclusive
+     */
+    public static <T extends Entity> List<T> getEntitiesInBox(Class<T> entityType, World world, double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return getEntitiesInRegion(entityType, world, new AxisAlignedBox(minX, minY, minZ, maxX, maxY, maxZ));
+    }
+
+    /**
+     * Returns a list of entities within a radius of a given location
+     *
+     * @param entityType type (or super-type) of entity to include in the search
+     * @param centre     centre of the area to search
+     * @param radius     radius to search within
+     * @param <T>        entity restriction to place on the search
+     * @return a list of entities within the given radius, inclusive
+     */
+    public static <T extends Entity> List<T> getEntitiesInRadius(Class<T> entityType, Location centre, double radius) {
+        return getEntitiesInRegion(entityType, centre.getWorld(), new Sphere(centre.getX(), centre.getY(), centre.getZ(), radius));
+    }
+
+    /**
+     * Returns every indexed entity of a type in a world
+     *
+     * @param entityType type (or super-type) of entity to include
+     * @param world      world to search
+     * @param <T>        entity restriction to place on the search
+     * @return a list of entities of the given type
+     */
+    public static <T extends Entity> List<T> getEntities(Class<T> entityType, World world) {
+        List<Entity> candidates = new ArrayList<>();
+        Map<EntityType, SpatialGrid<Entity>> grids = GRIDS.get(world.getUID());
+        if (grids != null) {
+            for (EntityType type : getTypes(entityType)) {
+                SpatialGrid<Entity> grid = grids.get(type);
+                if (grid != null) {
+                    grid.collectAll(candidates);
+                }
+            }
+        }
+        return filter(entityType, candidates);
+    }
+
+    private static List<Entity> collect(Class<? extends Entity> entityType, World world, int minX, int minZ, int maxX, int maxZ) {
+        List<Entity> candidates = new ArrayList<>();
+        Map<EntityType, SpatialGrid<Entity>> grids = GRIDS.get(world.getUID());
+        if (grids != null) {
+            for (EntityType type : getTypes(entityType)) {
+                SpatialGrid<Entity> grid = grids.get(type);
+                if (grid != null) {
+                    grid.collect(minX - REFRESH_MARGIN, minZ - REFRESH_MARGIN, maxX + REFRESH_MARGIN, maxZ + REFRESH_MARGIN, candidates);
+                }
+            }
+        }
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            Entity entity = candidates.get(i);
+            if (!entityType.isInstance(entity) || !entity.isValid()) {
+                candidates.remove(i);
+            }
+        }
+        return candidates;
+    }
+
+    private static <T extends Entity> List<T> filter(Class<T> entityType, List<Entity> candidates) {
+        List<T> entities = new ArrayList<>(candidates.size());
+        for (Entity entity : candidates) {
+            if (entityType.isInstance(entity) && entity.isValid()) {
+                entities.add(entityType.cast(entity));
+            }
+        }
+        return entities;
+    }
+
+    // Types whose class is unknown (e.g. those added by mods) could be anything, so are always included
+    private static Set<EntityType> getTypes(Class<?> entityType) {
+        Set<EntityType> types = TYPES_BY_CLASS.get(entityType);
+        if (types == null) {
+            types = EnumSet.noneOf(EntityType.class);
+            for (EntityType type : EntityType.values()) {
+                Class<?> typeClass = type.getEntityClass();
+                if (typeClass == null || entityType.isAssignableFrom(typeClass)) {
+                    types.add(type);
+                }
+            }
+            TYPES_BY_CLASS.putIfAbsent(entityType, types);
+        }
+        return types;
+    }
+
+    private static int floor(double value) {
+        int floor = (int) value;
+        return value < floor ? floor - 1 : floor;
+    }
+
+    private static void add(Entity entity, Location location) {
+        if (location == null || location.getWorld() == null) {
+            return;
+        }
+        UUID worldId = location.getWorld().getUID();
+        UUID previousWorld = ENTITY_WORLDS.put(entity, worldId);
+        if (previousWorld != null && !previousWorld.equals(worldId)) {
+            removeFromGrid(entity, previousWorld);
+        }
+        getGrid(worldId, entity.getType()).update(entity, location.getBlockX(), location.getBlockZ());
+    }
+
+    private static SpatialGrid<Entity> getGrid(UUID worldId, EntityType type) {
+        Map<EntityType, SpatialGrid<Entity>> grids = GRIDS.get(worldId);
+        if (grids == null) {
+            grids = new EnumMap<>(EntityType.class);
+            GRIDS.put(worldId, grids);
+        }
+        SpatialGrid<Entity> grid = grids.get(type);
+        if (grid == null) {
+            grid = new SpatialGrid<>();
+            grids.put(type, grid);
+        }
+        return grid;
+    }
+
+    private static void remove(Entity entity) {
+        UUID worldId = ENTITY_WORLDS.remove(entity);
+        if (worldId != null) {
+            removeFromGrid(entity, worldId);
+        }
+    }
+
+    private static void removeFromGrid(Entity entity, UUID worldId) {
+        Map<EntityType, SpatialGrid<Entity>> grids = GRIDS.get(worldId);
+        if (grids != null) {
+            SpatialGrid<Entity> grid = grids.get(entity.getType());
+            if (grid != null) {
+                grid.remove(entity);
+            }
+        }
+    }
+
+    private static void refresh() {
+        Iterator<Map.Entry<Entity, UUID>> iterator = ENTITY_WORLDS.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Entity, UUID> entry = iterator.next();
+            Entity entity = entry.getKey();
+            if (!entity.isValid() && !(entity instanceof Player && ((Player) entity).isOnline())) {
+                iterator.remove();
+                removeFromGrid(entity, entry.getValue());
+                continue;
+            }
+
+            entity.getLocation(LOCATION);
+            UUID worldId = LOCATION.getWorld().getUID();
+            if (!worldId.equals(entry.getValue())) {
+                removeFromGrid(entity, entry.getValue());
+                entry.setValue(worldId);
+            }
+            getGrid(worldId, entity.getType()).update(entity, LOCATION.getBlockX(), LOCATION.getBlockZ());
+        }
+    }
+
+    private static void rescan() {
+        for (World world : Bukkit.getWorlds()) {
+            for (Entity entity : world.getEntities()) {
+                if (!ENTITY_WORLDS.containsKey(entity)) {
+                    add(entity, entity.getLocation(LOCATION));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+import com.dsh105.commodus.Affirm;
+import com.dsh105.commodus.GeometryUtil;
+import com.dsh105.commodus.ServerUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.*;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Index of online players by world and chunk, so that finding nearby players only looks at players in nearby chunks
+ * <p/>
+ * The index is kept up to date by listening to player movement, and is used by {@link
+ * com.dsh105.commodus.GeometryUtil#getNearbyPlayers(org.bukkit.Location, int)} while enabled. It must only be used
+ * from the main server thread.
+ */
+public class PlayerSpatialIndex {
+
+    public static final int DEFAULT_VIEW_DISTANCE = 50;
+
+    // Movement that doesn't fire events (e.g. riding vehicles) is caught by resynchronising every second
+    private static final long RESYNC_PERIOD = 20L;
+
+    private static final Map<UUID, SpatialGrid<Player>> GRIDS = new HashMap<>();
+    private static final Map<Player, UUID> PLAYER_WORLDS = new HashMap<>();
+
+    private static volatile int VIEW_DISTANCE = DEFAULT_VIEW_DISTANCE;
+    private static Listener LISTENER;
+    private static BukkitTask RESYNC_TASK;
+
+    private PlayerSpatialIndex() {
+    }
+
+    /**
+     * Gets the range within which players are sent effects such as particles
+     *
+     * @return view distance, in blocks
+     */
+    public static int getViewDistance() {
+        return VIEW_DISTANCE;
+    }
+
+    /**
+     * Sets the range within which players are sent effects such as particles
+     *
+     * @param viewDistance view distance, in blocks
+     */
+    public static void setViewDistance(int viewDistance) {
+        Affirm.isTrue(viewDistance > 0, "View distance must be positive");
+        VIEW_DISTANCE = viewDistance;
+    }
+
+    /**
+     * Enables the index. It is disabled automatically when the given plugin is disabled
+     *
+     * @param plugin plugin to register listeners with
+     */
+    public static synchronized void enable(final Plugin plugin) {
+        if (LISTENER != null) {
+            return;
+        }
+
+        Listener listener = new Listener() {
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onJoin(PlayerJoinEvent event) {
+                update(event.getPlayer(), event.getPlayer().getLocation());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onQuit(PlayerQuitEvent event) {
+                remove(event.getPlayer());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+            public void onMove(PlayerMoveEvent event) {
+                Location from = event.getFrom(), to = event.getTo();
+                // Most moves stay within a chunk
+                if (from.getBlockX() >> 4 != to.getBlockX() >> 4 || from.getBlockZ() >> 4 != to.getBlockZ() >> 4) {
+                    update(event.getPlayer(), to);
+                }
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+            public void onTeleport(PlayerTeleportEvent event) {
+                update(event.getPlayer(), event.getTo());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onRespawn(PlayerRespawnEvent event) {
+                update(event.getPlayer(), event.getRespawnLocation());
+            }
+
+            @EventHandler(priority = EventPriority.MONITOR)
+            public void onChangeWorld(PlayerChangedWorldEvent event) {
+                update(event.getPlayer(), event.getPlayer().getLocation());
+            }
+
+            @EventHandler
+            public void onDisable(PluginDisableEvent event) {
+                if (event.getPlugin() == plugin) {
+                    disable();
+                }
+            }
+        };
+        Bukkit.getPluginManager().registerEvents(listener, plugin);
+        RESYNC_TASK = Bukkit.getScheduler().runTaskTimer(plugin, new Runnable() {
+            @Override
+            public void run() {
+                resync();
+            }
+        }, RESYNC_PERIOD, RESYNC_PERIOD);
+        LISTENER = listener;
+        resync();
+    }
+
+    /**
+     * Disables the index enabled by {@link #enable(org.bukkit.plugin.Plugin)}
+     */
+    public static synchronized void disable() {
+        if (LISTENER != null) {
+            HandlerList.unregisterAll(LISTENER);
+            RESYNC_TASK.cancel();
+            LISTENER = null;
+            RESYNC_TASK = null;
+            GRIDS.clear();
+            PLAYER_WORLDS.clear();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return LISTENER != null;
+    }
+
+    /**
+     * Returns a list of players near a given location, using the same bounds as {@link
+     * com.dsh105.commodus.GeometryUtil#isInBorder(org.bukkit.Location, org.bukkit.Location, int)}
+     *
+     * @param origin origin or centre
+     * @param range  range to search within. If {@code range <= 0}, every player in the world is included
+     * @return a list of nearby players
+     */
+    public static List<Player> getNearbyPlayers(Location origin, int range) {
+        World world = origin.getWorld();
+        if (range <= 0) {
+            return new ArrayList<>(world.getPlayers());
+        }
+        List<Player> players = new ArrayList<>();
+        SpatialGrid<Player> grid = GRIDS.get(world.getUID());
+        if (grid == null) {
+            return players;
+        }
+
+        int x = origin.getBlockX(), z = origin.getBlockZ();
+        grid.collect(x - range, z - range, x + range, z + range, players);
+        for (int i = players.size() - 1; i >= 0; i--) {
+            Player player = players.get(i);
+            if (!GeometryUtil.isInBorder(origin, player.getLocation(), range)) {
+                players.remove(i);
+            }
+        }
+        return players;
+    }
+
+    private static void update(Player player, Location location) {
+        if (location == null || location.getWorld() == null) {
+            return;
+        }
+        UUID worldId = location.getWorld().getUID();
+        UUID previousWorld = PLAYER_WORLDS.put(player, worldId);
+        if (previousWorld != null && !previousWorld.equals(worldId)) {
+            removeFromGrid(player, previousWorld);
+        }
+
+        SpatialGrid<Player> grid = GRIDS.get(worldId);
+        if (grid == null) {
+            grid = new SpatialGrid<>();
+            GRIDS.put(worldId, grid);
+        }
+        grid.update(player, location.getBlockX(), location.getBlockZ());
+    }
+
+    private static void remove(Player player) {
+        UUID worldId = PLAYER_WORLDS.remove(player);
+        if (worldId != null) {
+            removeFromGrid(player, worldId);
+        }
+    }
+
+    private static void removeFromGrid(Player player, UUID worldId) {
+        SpatialGrid<Player> grid = GRIDS.get(worldId);
+        if (grid != null && grid.remove(player) && grid.size() == 0) {
+            GRIDS.remove(worldId);
+        }
+    }
+
+    private static void resync() {
+        List<Player> onlinePlayers = ServerUtil.getOnlinePlayers();
+        if (PLAYER_WORLDS.size() > onlinePlayers.size()) {
+            // Missed a quit somewhere
+            GRIDS.clear();
+            PLAYER_WORLDS.clear();
+        }
+        for (Player player : onlinePlayers) {
+            update(player, player.getLocation());
+        }
+    }
+}
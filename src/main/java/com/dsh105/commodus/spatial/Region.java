@@ -0,0 +1,59 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+/**
+ * A solid region of space, tested against raw coordinates so that no {@link org.bukkit.Location}s are needed
+ * <p/>
+ * Regions are immutable and are not bound to a world
+ */
+public interface Region {
+
+    /**
+     * Returns whether a point is inside this region. Points on the boundary are inside
+     *
+     * @return true if the point is inside this region
+     */
+    boolean contains(double x, double y, double z);
+
+    /**
+     * Casts a ray at this region
+     *
+     * @param originX    x coordinate the ray starts at
+     * @param originY    y coordinate the ray starts at
+     * @param originZ    z coordinate the ray starts at
+     * @param directionX x component of the direction of the ray
+     * @param directionY y component of the direction of the ray
+     * @param directionZ z component of the direction of the ray
+     * @return distance along the ray at which it enters this region, as a multiple of the length of its direction. 0 if
+     * the ray starts inside this region, or -1 if the ray misses
+     */
+    double raycast(double originX, double originY, double originZ, double directionX, double directionY, double directionZ);
+
+    double getMinX();
+
+    double getMinY();
+
+    double getMinZ();
+
+    double getMaxX();
+
+    double getMaxY();
+
+    double getMaxZ();
+}
@@ -0,0 +1,173 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+import com.dsh105.commodus.Affirm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A grid of square cells on the x/z plane, each holding the elements currently inside it
+ * <p/>
+ * Cells are chunk-sized by default. Only the cell of each element is tracked, so queries return every element in the
+ * cells overlapping an area, and callers check exact positions themselves. Grids are not thread-safe.
+ *
+ * @param <T> type of element held in the grid
+ */
+public class SpatialGrid<T> {
+
+    private final int cellShift;
+    private final Map<Long, List<T>> cells = new HashMap<>();
+    private final Map<T, Long> elementCells = new HashMap<>();
+
+    public SpatialGrid() {
+        this(4);
+    }
+
+    /**
+     * Constructs a new spatial grid
+     *
+     * @param cellShift size of each cell, as a power of two. {@code 4} gives chunk-sized cells
+     */
+    public SpatialGrid(int cellShift) {
+        Affirm.isTrue(cellShift >= 0 && cellShift < 31, "Cell shift must be between 0 and 30");
+        this.cellShift = cellShift;
+    }
+
+    public int getCellShift() {
+        return cellShift;
+    }
+
+    /**
+     * Gets the key of the cell at the given cell coordinates
+     *
+     * @param cellX x coordinate of the cell
+     * @param cellZ z coordinate of the cell
+     * @return key of the given cell
+     */
+    public static long key(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Places an element at the given position, moving it out of any cell it was previously in
+     *
+     * @param element element to place
+     * @param blockX  x coordinate of the element
+     * @param blockZ  z coordinate of the element
+     * @return true if the element changed cells
+     */
+    public boolean update(T element, int blockX, int blockZ) {
+        long key = key(blockX >> cellShift, blockZ >> cellShift);
+        Long previous = elementCells.put(element, key);
+        if (previous != null) {
+            if (previous == key) {
+                return false;
+            }
+            removeFromCell(element, previous);
+        }
+        List<T> cell = cells.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>(4);
+            cells.put(key, cell);
+        }
+        cell.add(element);
+        return true;
+    }
+
+    /**
+     * Removes an element from this grid
+     *
+     * @param element element to remove
+     * @return true if the element was in this grid
+     */
+    public boolean remove(T element) {
+        Long previous = elementCells.remove(element);
+        if (previous == null) {
+            return false;
+        }
+        removeFromCell(element, previous);
+        return true;
+    }
+
+    private void removeFromCell(T element, long key) {
+        List<T> cell = cells.get(key);
+        if (cell != null && cell.remove(element) && cell.isEmpty()) {
+            cells.remove(key);
+        }
+    }
+
+    public boolean contains(T element) {
+        return elementCells.containsKey(element);
+    }
+
+    public int size() {
+        return elementCells.size();
+    }
+
+    public void clear() {
+        cells.clear();
+        elementCells.clear();
+    }
+
+    /**
+     * Adds every element in this grid to a collection
+     *
+     * @param into collection to add elements to
+     */
+    public void collectAll(Collection<? super T> into) {
+        into.addAll(elementCells.keySet());
+    }
+
+    /**
+     * Adds every element in a cell overlapping the given area to a collection
+     *
+     * @param minX minimum x coordinate of the area, inclusive
+     * @param minZ minimum z coordinate of the area, inclusive
+     * @param maxX maximum x coordinate of the area, inclusive
+     * @param maxZ maximum z coordinate of the area, inclusive
+     * @param into collection to add elements to
+     */
+    public void collect(int minX, int minZ, int maxX, int maxZ, Collection<? super T> into) {
+        int minCellX = minX >> cellShift, maxCellX = maxX >> cellShift;
+        int minCellZ = minZ >> cellShift, maxCellZ = maxZ >> cellShift;
+        // Large areas may cover more cells than are occupied
+        if ((long) (maxCellX - minCellX + 1) * (maxCellZ - minCellZ + 1) > cells.size()) {
+            for (Map.Entry<Long, List<T>> entry : cells.entrySet()) {
+                long key = entry.getKey();
+                int cellX = (int) (key >> 32), cellZ = (int) key;
+                if (cellX >= minCellX && cellX <= maxCellX && cellZ >= minCellZ && cellZ <= maxCellZ) {
+                    into.addAll(entry.getValue());
+                }
+            }
+            return;
+        }
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                List<T> cell = cells.get(key(cellX, cellZ));
+                if (cell != null) {
+                    into.addAll(cell);
+                }
+            }
+        }
+    }
+}
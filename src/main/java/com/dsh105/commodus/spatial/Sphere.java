@@ -0,0 +1,114 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+import com.dsh105.commodus.Affirm;
+
+/**
+ * A sphere. Containment is tested with squared distances, so no square roots are taken
+ */
+public final class Sphere implements Region {
+
+    private final double centreX, centreY, centreZ;
+    private final double radius;
+    private final double radiusSquared;
+
+    public Sphere(double centreX, double centreY, double centreZ, double radius) {
+        Affirm.isTrue(radius >= 0, "Radius must not be negative");
+        this.centreX = centreX;
+        this.centreY = centreY;
+        this.centreZ = centreZ;
+        this.radius = radius;
+        this.radiusSquared = radius * radius;
+    }
+
+    @Override
+    public boolean contains(double x, double y, double z) {
+        double dx = x - centreX, dy = y - centreY, dz = z - centreZ;
+        return dx * dx + dy * dy + dz * dz <= radiusSquared;
+    }
+
+    @Override
+    public double raycast(double originX, double originY, double originZ, double directionX, double directionY, double directionZ) {
+        double ox = originX - centreX, oy = originY - centreY, oz = originZ - centreZ;
+        double c = ox * ox + oy * oy + oz * oz - radiusSquared;
+        if (c <= 0) {
+            return 0;
+        }
+        double a = directionX * directionX + directionY * directionY + directionZ * directionZ;
+        double b = 2 * (ox * directionX + oy * directionY + oz * directionZ);
+        double discriminant = b * b - 4 * a * c;
+        if (a == 0 || discriminant < 0) {
+            return -1;
+        }
+        double t = (-b - Math.sqrt(discriminant)) / (2 * a);
+        // Starting outside, so both intersections are either ahead or behind
+        return t >= 0 ? t : -1;
+    }
+
+    public double getCentreX() {
+        return centreX;
+    }
+
+    public double getCentreY() {
+        return centreY;
+    }
+
+    public double getCentreZ() {
+        return centreZ;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    @Override
+    public double getMinX() {
+        return centreX - radius;
+    }
+
+    @Override
+    public double getMinY() {
+        return centreY - radius;
+    }
+
+    @Override
+    public double getMinZ() {
+        return centreZ - radius;
+    }
+
+    @Override
+    public double getMaxX() {
+        return centreX + radius;
+    }
+
+    @Override
+    public double getMaxY() {
+        return centreY + radius;
+    }
+
+    @Override
+    public double getMaxZ() {
+        return centreZ + radius;
+    }
+
+    @Override
+    public String toString() {
+        return "Sphere{centre=" + centreX + "," + centreY + "," + centreZ + ", radius=" + radius + "}";
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+public class ProfileParserTest {
+
+    private static Map<String, UUID> parse(String json) throws IOException {
+        final Map<String, UUID> profiles = new HashMap<>();
+        ProfileParser.parse(new StringReader(json), new ProfileParser.Handler() {
+            @Override
+            public void handle(String name, UUID uuid) {
+                profiles.put(name, uuid);
+            }
+        });
+        return profiles;
+    }
+
+    @Test
+    public void testParsing() throws IOException {
+        Map<String, UUID> profiles = parse("[ {\"id\": \"2d762d9c2a1a4d9998218f6b5e11a51a\", \"name\": \"stuntguy3000\"},\n"
+                + "{\"name\":\"Vexil_\",\"legacy\":true,\"demo\":false,\"extra\":{\"a\":[1,\"]\"]},\"id\":\"fFfFfFfF-0000-0000-8000-000000000001\"}]");
+        Assert.assertEquals(2, profiles.size());
+        Assert.assertEquals(UUID.fromString("2d762d9c-2a1a-4d99-9821-8f6b5e11a51a"), profiles.get("stuntguy3000"));
+        Assert.assertEquals(UUID.fromString("ffffffff-0000-0000-8000-000000000001"), profiles.get("Vexil_"));
+    }
+
+    @Test
+    public void testEscapesAndEmpty() throws IOException {
+        Assert.assertTrue(parse(" [ ] ").isEmpty());
+        Assert.assertEquals(1, parse("[{\"id\":\"00000000000000000000000000000000\",\"name\":\"a\\\"\\u0062\"}]").size());
+        Assert.assertNotNull(parse("[{\"id\":\"00000000000000000000000000000000\",\"name\":\"a\\\"\\u0062\"}]").get("a\"b"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        parse("[{\"id\":\"2d762d9c2a1a4d99");
+    }
+}
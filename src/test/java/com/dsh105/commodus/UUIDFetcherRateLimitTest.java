@@ -0,0 +1,114 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.Assert;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class UUIDFetcherRateLimitTest {
+
+    private static final String PROFILES = "[{\"id\":\"2d762d9c2a1a4d9998218f6b5e11a51a\",\"name\":\"stuntguy3000\"}]";
+
+    private HttpServer server;
+    private String profileUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/profiles/minecraft", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream body = exchange.getRequestBody();
+                while (body.read() != -1) {
+                    // Drain the request
+                }
+
+                if (requests.incrementAndGet() == 1) {
+                    // Throttle the first request
+                    exchange.getResponseHeaders().add("Retry-After", "1");
+                    exchange.sendResponseHeaders(429, -1);
+                    exchange.close();
+                    return;
+                }
+
+                byte[] response = PROFILES.getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+        profileUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/profiles/minecraft";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        // Don't leave penalties or unknown names behind for other tests
+        UUIDFetcher.resetLimits();
+    }
+
+    @Test
+    public void testRetryAndNegativeCaching() throws Exception {
+        double rate = UUIDFetcher.getRequestLimiter().getRate();
+        Map<String, UUID> result = new UUIDFetcher(Arrays.asList("stuntguy3000", "NotAPlayer_1234"), true, profileUrl).call();
+
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(UUID.fromString("2d762d9c-2a1a-4d99-9821-8f6b5e11a51a"), result.get("stuntguy3000"));
+        Assert.assertTrue(UUIDFetcher.getRequestLimiter().getRate() < rate);
+
+        // Mojang had nothing for this one, so it shouldn't be requested again
+        Assert.assertTrue(UUIDFetcher.isUnknown("notaplayer_1234"));
+        Assert.assertTrue(new UUIDFetcher(Arrays.asList("NotAPlayer_1234"), true, profileUrl).call().isEmpty());
+        Assert.assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void testTokenBucket() throws Exception {
+        TokenBucket bucket = new TokenBucket(2, 1);
+        Assert.assertTrue(bucket.tryAcquire());
+        Assert.assertTrue(bucket.tryAcquire());
+        Assert.assertFalse(bucket.tryAcquire());
+
+        bucket.penalise(0);
+        Assert.assertEquals(0.5, bucket.getRate(), 0.0001);
+        bucket.reward();
+        Assert.assertEquals(0.6, bucket.getRate(), 0.0001);
+
+        bucket.reset();
+        Assert.assertEquals(1, bucket.getRate(), 0.0001);
+        Assert.assertTrue(bucket.tryAcquire());
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.Assert;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class UUIDMigratorTest {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String profileUrl;
+
+    private final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+    // Requests containing this name fail, after the given delay
+    private volatile String failingName;
+    private volatile long failureDelay;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/profiles/minecraft", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Reader reader = new InputStreamReader(exchange.getRequestBody(), "UTF-8");
+                JSONArray names = (JSONArray) JSONValue.parse(reader);
+                reader.close();
+
+                if (failingName != null && names.contains(failingName)) {
+                    try {
+                        Thread.sleep(failureDelay);
+                    } catch (InterruptedException ignored) {
+                    }
+                    exchange.sendResponseHeaders(500, -1);
+                    exchange.close();
+                    return;
+                }
+
+                StringBuilder response = new StringBuilder("[");
+                for (Object name : names) {
+                    requested.add((String) name);
+                    if (response.length() > 1) {
+                        response.append(',');
+                    }
+                    response.append("{\"id\":\"").append(uuidOf((String) name).toString().replace("-", ""))
+                            .append("\",\"name\":\"").append(name).append("\"}");
+                }
+                byte[] bytes = response.append(']').toString().getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        profileUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/profiles/minecraft";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        UUIDFetcher.getCache().invalidateAll();
+        UUIDFetcher.resetLimits();
+    }
+
+    @Test
+    public void testDuplicatesInFlight() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        new UUIDMigrator().withProfileUrl(profileUrl)
+                .migrate(Arrays.asList("dupe_0", "dupe_1", "DUPE_1", "dupe_2", "dupe_0"), callback);
+
+        Assert.assertEquals(Arrays.asList("dupe_0", "dupe_1", "dupe_2"), requested);
+        Assert.assertEquals(3, callback.resolved.size());
+        Assert.assertEquals(uuidOf("dupe_1"), callback.resolved.get("dupe_1"));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        File checkpoint = newCheckpointFile();
+        List<String> names = names("resume_", 250);
+
+        failingName = "resume_200";
+        UUIDMigrator migrator = new UUIDMigrator().withConcurrency(1).withCheckpoint(checkpoint).withProfileUrl(profileUrl);
+        try {
+            migrator.migrate(names, new RecordingCallback());
+            Assert.fail("Failing batch wasn't reported");
+        } catch (IOException expected) {
+        }
+        Assert.assertEquals("200", readCheckpoint(checkpoint));
+
+        // Only the failed batch should be requested again, even though nothing is cached
+        failingName = null;
+        requested.clear();
+        UUIDFetcher.getCache().invalidateAll();
+        RecordingCallback callback = new RecordingCallback();
+        migrator.migrate(names, callback);
+
+        Assert.assertEquals(names.subList(200, 250), requested);
+        Assert.assertEquals(50, callback.resolved.size());
+        Assert.assertFalse(checkpoint.exists());
+    }
+
+    @Test
+    public void testCheckpointWaitsForEarlierBatches() throws Exception {
+        File checkpoint = newCheckpointFile();
+
+        // The first batch fails slowly, after the two behind it have completed
+        failingName = "order_0";
+        failureDelay = 200;
+        try {
+            new UUIDMigrator().withConcurrency(3).withCheckpoint(checkpoint).withProfileUrl(profileUrl)
+                    .migrate(names("order_", 300), new RecordingCallback());
+            Assert.fail("Failing batch wasn't reported");
+        } catch (IOException expected) {
+        }
+
+        Assert.assertEquals(200, requested.size());
+        Assert.assertFalse(checkpoint.exists());
+    }
+
+    private static List<String> names(String prefix, int count) {
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(prefix + i);
+        }
+        return names;
+    }
+
+    private static UUID uuidOf(String name) {
+        try {
+            return UUID.nameUUIDFromBytes(name.toLowerCase().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static File newCheckpointFile() throws IOException {
+        File file = File.createTempFile("migration", ".checkpoint");
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static String readCheckpoint(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static class RecordingCallback implements UUIDMigrator.Callback {
+
+        private final Map<String, UUID> resolved = new HashMap<>();
+
+        @Override
+        public void onResolved(String name, UUID uuid) {
+            resolved.put(name, uuid);
+        }
+
+        @Override
+        public void onUnresolved(String name) {
+            Assert.fail("Unexpected unresolved name: " + name);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+public class UUIDStoreTest {
+
+    private static final UUID STUNTGUY = UUID.fromString("2d762d9c-2a1a-4d99-9821-8f6b5e11a51a");
+    private static final UUID NOTCH = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+
+    @Test
+    public void testPersistence() throws Exception {
+        File file = File.createTempFile("uuids", ".dat");
+        file.deleteOnExit();
+
+        UUIDStore store = new UUIDStore(file);
+        store.load();
+        store.put("stuntguy3000", STUNTGUY);
+        store.close();
+
+        UUIDStore reopened = new UUIDStore(file);
+        Assert.assertEquals(1, reopened.load());
+        Assert.assertEquals(STUNTGUY, reopened.get("StuntGuy3000"));
+        reopened.close();
+    }
+
+    @Test
+    public void testPartialRecord() throws Exception {
+        File file = File.createTempFile("uuids", ".dat");
+        file.deleteOnExit();
+
+        UUIDStore store = new UUIDStore(file);
+        store.load();
+        store.put("stuntguy3000", STUNTGUY);
+        store.close();
+
+        // Chop off the end of the last record, as if the server died halfway through writing it
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 4);
+        raf.close();
+
+        UUIDStore reopened = new UUIDStore(file);
+        Assert.assertEquals(0, reopened.load());
+        reopened.put("stuntguy3000", STUNTGUY);
+        reopened.close();
+
+        UUIDStore recovered = new UUIDStore(file);
+        Assert.assertEquals(1, recovered.load());
+        Assert.assertEquals(STUNTGUY, recovered.get("stuntguy3000"));
+        recovered.close();
+    }
+
+    @Test
+    public void testPartialName() throws Exception {
+        File file = File.createTempFile("uuids", ".dat");
+        file.deleteOnExit();
+
+        UUIDStore store = new UUIDStore(file);
+        store.load();
+        store.put("stuntguy3000", STUNTGUY);
+        long firstRecordEnd = file.length();
+        store.put("Notch", NOTCH);
+        store.close();
+
+        // End the log two characters into the second name
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(firstRecordEnd + 4);
+        raf.close();
+
+        UUIDStore reopened = new UUIDStore(file);
+        Assert.assertEquals(1, reopened.load());
+        Assert.assertEquals(firstRecordEnd, file.length());
+        reopened.put("Notch", NOTCH);
+        reopened.close();
+
+        UUIDStore recovered = new UUIDStore(file);
+        Assert.assertEquals(2, recovered.load());
+        Assert.assertEquals(STUNTGUY, recovered.get("stuntguy3000"));
+        Assert.assertEquals(NOTCH, recovered.get("notch"));
+        recovered.close();
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        File file = File.createTempFile("uuids", ".dat");
+        file.deleteOnExit();
+
+        UUIDStore store = new UUIDStore(file);
+        store.load();
+        store.put("stuntguy3000", STUNTGUY);
+        store.close();
+        long length = file.length();
+
+        // Kept in memory only, and the file isn't reopened
+        store.put("Notch", NOTCH);
+        store.compact();
+        Assert.assertEquals(NOTCH, store.get("notch"));
+        Assert.assertEquals(length, file.length());
+    }
+}
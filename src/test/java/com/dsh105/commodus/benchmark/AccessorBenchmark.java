@@ -0,0 +1,120 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.benchmark;
+
+import com.dsh105.commodus.reflection.AccessorGenerator;
+import com.dsh105.commodus.reflection.FieldGetter;
+import com.dsh105.commodus.reflection.MethodInvoker;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading a field and calling a method through reflection, MethodHandles and generated accessors, using an
+ * entity-like target similar to the NMS data read each tick
+ * <p>
+ * Run with {@code mvn test-compile}, then {@code java -cp <test classpath> org.openjdk.jmh.Main AccessorBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AccessorBenchmark {
+
+    public static class Entity {
+
+        public double locX = 12.5;
+
+        public double distanceSquared(double x, double y, double z) {
+            return (locX - x) * (locX - x) + y * y + z * z;
+        }
+    }
+
+    private static final Field FIELD;
+    private static final Method METHOD;
+    private static final MethodHandle FIELD_HANDLE;
+    private static final MethodHandle METHOD_HANDLE;
+    private static final FieldGetter<Entity, Double> FIELD_GETTER;
+    private static final MethodInvoker METHOD_INVOKER;
+
+    static {
+        try {
+            FIELD = Entity.class.getField("locX");
+            METHOD = Entity.class.getMethod("distanceSquared", double.class, double.class, double.class);
+            FIELD_HANDLE = MethodHandles.lookup().unreflectGetter(FIELD);
+            METHOD_HANDLE = MethodHandles.lookup().unreflect(METHOD);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        FIELD_GETTER = AccessorGenerator.getFieldGetter(FIELD);
+        METHOD_INVOKER = AccessorGenerator.getMethodInvoker(METHOD);
+    }
+
+    private Entity entity;
+
+    @Setup
+    public void setup() {
+        entity = new Entity();
+    }
+
+    @Benchmark
+    public double fieldDirect() {
+        return entity.locX;
+    }
+
+    @Benchmark
+    public Object fieldReflection() throws Exception {
+        return FIELD.get(entity);
+    }
+
+    @Benchmark
+    public double fieldMethodHandle() throws Throwable {
+        return (double) FIELD_HANDLE.invokeExact(entity);
+    }
+
+    @Benchmark
+    public Object fieldGenerated() {
+        return FIELD_GETTER.get(entity);
+    }
+
+    @Benchmark
+    public double methodDirect() {
+        return entity.distanceSquared(1, 2, 3);
+    }
+
+    @Benchmark
+    public Object methodReflection() throws Exception {
+        return METHOD.invoke(entity, 1D, 2D, 3D);
+    }
+
+    @Benchmark
+    public double methodMethodHandle() throws Throwable {
+        return (double) METHOD_HANDLE.invokeExact(entity, 1D, 2D, 3D);
+    }
+
+    @Benchmark
+    public Object methodGenerated() {
+        return METHOD_INVOKER.invoke(entity, 1D, 2D, 3D);
+    }
+}
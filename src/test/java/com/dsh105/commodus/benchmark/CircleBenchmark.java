@@ -0,0 +1,195 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.benchmark;
+
+import com.dsh105.commodus.BlockCursor;
+import com.dsh105.commodus.BlockVisitor;
+import com.dsh105.commodus.GeometryUtil;
+import org.bukkit.*;
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building a list of locations with {@link com.dsh105.commodus.GeometryUtil#circle(org.bukkit.Location, int,
+ * int, boolean, boolean, boolean)} against visiting the same blocks with a {@link com.dsh105.commodus.BlockVisitor},
+ * and both against the original implementation, which looked up a {@link org.bukkit.block.Block} for every position
+ * <p>
+ * Without air, blocks are checked against a fake world that is solid below y = 64. Like CraftBukkit, the fake world
+ * copies a whole chunk for each snapshot, so small radii show the cost of snapshots against looking up a few blocks.
+ * As every lookup goes through a proxy, only the relative results are meaningful
+ * <p>
+ * Run with {@code mvn test-compile}, then {@code java -cp <test classpath> org.openjdk.jmh.Main CircleBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CircleBenchmark {
+
+    private static final int GROUND = 64;
+    private static final int MAX_HEIGHT = 256;
+
+    @Param({"2", "4", "8", "32"})
+    public int radius;
+
+    @Param({"true", "false"})
+    public boolean includeAir;
+
+    private Location origin;
+
+    @Setup
+    public void setup() {
+        origin = new Location(createWorld(), 100, GROUND, -100);
+    }
+
+    @Benchmark
+    public void perBlock(Blackhole blackhole) {
+        for (Location location : perBlockCircle(origin, radius, 1, false, true, includeAir)) {
+            blackhole.consume(location.getBlockX());
+        }
+    }
+
+    @Benchmark
+    public void locationList(Blackhole blackhole) {
+        for (Location location : GeometryUtil.circle(origin, radius, 1, false, true, includeAir)) {
+            blackhole.consume(location.getBlockX());
+        }
+    }
+
+    @Benchmark
+    public void visitor(final Blackhole blackhole) {
+        GeometryUtil.circle(origin, radius, 1, false, true, includeAir, new BlockVisitor() {
+            @Override
+            public void visit(BlockCursor cursor) {
+                blackhole.consume(cursor.getX());
+            }
+        });
+    }
+
+    // The implementation before blocks were visited, kept as a baseline
+    private static List<Location> perBlockCircle(Location origin, int radius, int height, boolean hollow, boolean sphere, boolean includeAir) {
+        List<Location> blocks = new ArrayList<>();
+        int cx = origin.getBlockX(),
+                cy = origin.getBlockY(),
+                cz = origin.getBlockZ();
+        for (int x = cx - radius; x <= cx + radius; x++) {
+            for (int z = cz - radius; z <= cz + radius; z++) {
+                for (int y = (sphere ? cy - radius : cy); y < (sphere ? cy + radius : cy + height); y++) {
+                    double dist = (cx - x) * (cx - x) + (cz - z) * (cz - z) + (sphere ? (cy - y) * (cy - y) : 0);
+                    if (dist < radius * radius && !(hollow && dist < (radius - 1) * (radius - 1))) {
+                        Location l = new Location(origin.getWorld(), x, y, z);
+                        if (!includeAir && l.getBlock().getType() == Material.AIR) {
+                            continue;
+                        }
+                        blocks.add(l);
+                    }
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private static World createWorld() {
+        final short[] chunkTemplate = new short[16 * 16 * MAX_HEIGHT];
+        for (int i = 0; i < chunkTemplate.length; i++) {
+            chunkTemplate[i] = (short) (i / 256 < GROUND ? Material.STONE.getId() : 0);
+        }
+        final World[] world = new World[1];
+        world[0] = fake(World.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getMaxHeight":
+                        return MAX_HEIGHT;
+                    case "getChunkAt":
+                        return createChunk(world[0], chunkTemplate);
+                    case "getBlockAt":
+                        return createBlock(args.length == 1 ? ((Location) args[0]).getBlockY() : (Integer) args[1]);
+                    default:
+                        return defaultValue(proxy, method, args);
+                }
+            }
+        });
+        return world[0];
+    }
+
+    private static Chunk createChunk(final World world, final short[] template) {
+        return fake(Chunk.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "getWorld":
+                        return world;
+                    case "getChunkSnapshot":
+                        // Snapshots copy the chunk's blocks
+                        final short[] blocks = template.clone();
+                        return fake(ChunkSnapshot.class, new InvocationHandler() {
+                            @Override
+                            public Object invoke(Object proxy, Method method, Object[] args) {
+                                if (method.getName().equals("getBlockTypeId")) {
+                                    return (int) blocks[(Integer) args[1] << 8 | (Integer) args[2] << 4 | (Integer) args[0]];
+                                }
+                                return defaultValue(proxy, method, args);
+                            }
+                        });
+                    default:
+                        return defaultValue(proxy, method, args);
+                }
+            }
+        });
+    }
+
+    private static Block createBlock(final int y) {
+        return fake(Block.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getType")) {
+                    return y < GROUND ? Material.STONE : Material.AIR;
+                }
+                return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    private static <T> T fake(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return method.getDeclaringClass().getSimpleName();
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
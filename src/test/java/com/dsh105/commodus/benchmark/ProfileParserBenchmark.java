@@ -0,0 +1,81 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.benchmark;
+
+import com.dsh105.commodus.ProfileParser;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link com.dsh105.commodus.ProfileParser} with the json-simple parsing previously used by
+ * {@link com.dsh105.commodus.UUIDFetcher}, for a full 100 profile response
+ * <p>
+ * Run with {@code mvn test-compile}, then {@code java -cp <test classpath> org.openjdk.jmh.Main ProfileParserBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProfileParserBenchmark {
+
+    private String response;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            UUID uuid = UUID.randomUUID();
+            builder.append("{\"id\":\"").append(uuid.toString().replace("-", "")).append("\",\"name\":\"Player").append(i).append("\"}");
+        }
+        response = builder.append(']').toString();
+    }
+
+    @Benchmark
+    public void jsonSimple(Blackhole blackhole) throws Exception {
+        JSONArray array = (JSONArray) new JSONParser().parse(new StringReader(response));
+        for (Object profile : array) {
+            JSONObject jsonProfile = (JSONObject) profile;
+            String id = (String) jsonProfile.get("id");
+            blackhole.consume(jsonProfile.get("name"));
+            blackhole.consume(UUID.fromString(id.substring(0, 8) + "-" + id.substring(8, 12) + "-" + id.substring(12, 16) + "-" + id.substring(16, 20) + "-" + id.substring(20, 32)));
+        }
+    }
+
+    @Benchmark
+    public void streaming(final Blackhole blackhole) throws Exception {
+        ProfileParser.parse(new StringReader(response), new ProfileParser.Handler() {
+            @Override
+            public void handle(String name, UUID uuid) {
+                blackhole.consume(name);
+                blackhole.consume(uuid);
+            }
+        });
+    }
+}
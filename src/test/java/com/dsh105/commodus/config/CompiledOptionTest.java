@@ -0,0 +1,102 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import com.google.common.base.Charsets;
+import junit.framework.Assert;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+public class CompiledOptionTest {
+
+    @Test
+    public void testInvalidation() throws Exception {
+        File file = File.createTempFile("commodus", ".yml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "limits:\n  pets: 3\n".getBytes(Charsets.UTF_8));
+        YAMLConfig config = new YAMLConfig(new YAMLConfigManager(null), file, null);
+        IntOption option = new IntOption(null, "limits.%s", 1);
+
+        Assert.assertEquals(3, option.getInt(config, "pets"));
+        Assert.assertEquals(1, option.getInt(config, "missing"));
+
+        config.set("limits.pets", 5);
+        Assert.assertEquals(5, option.getInt(config, "pets"));
+
+        Files.write(file.toPath(), "limits:\n  pets: 7\n".getBytes(Charsets.UTF_8));
+        config.reloadConfig();
+        Assert.assertEquals(7, option.getInt(config, "pets"));
+
+        YamlConfiguration values = new YamlConfiguration();
+        values.loadFromString("limits:\n  pets: 9\n  missing: 2\n");
+        config.swap(values, new ConfigComments());
+        Assert.assertEquals(9, option.getInt(config, "pets"));
+        Assert.assertEquals(2, option.getInt(config, "missing"));
+
+        Options options = new Options(config) {
+            @Override
+            public void setDefaults() {
+            }
+        };
+        options.lockValue(option, 4, "pets");
+        Assert.assertEquals(4, option.getInt(options, "pets"));
+        // Locking to null doesn't override the config
+        options.lockValue(option, null, "pets");
+        Assert.assertEquals(9, option.getInt(options, "pets"));
+    }
+
+    @Test
+    public void testSharedOption() throws Exception {
+        YAMLConfig first = new YAMLConfig(new YAMLConfigManager(null), tempFile("pets:\n  dog:\n    speed: 2\n"), null);
+        YAMLConfig second = new YAMLConfig(new YAMLConfigManager(null), tempFile("pets:\n  dog:\n    speed: 4\n"), null);
+        IntOption option = new IntOption(null, "pets.%s.%s", 1);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(2, option.getInt(first, "dog", "speed"));
+            Assert.assertEquals(4, option.getInt(second, "dog", "speed"));
+        }
+
+        // Past the bound, values are read again rather than lost
+        for (int i = 0; i <= CompiledOption.MAX_CACHED_VALUES; i++) {
+            Assert.assertEquals(1, option.getInt(first, "cat" + i, "speed"));
+        }
+        Assert.assertEquals(2, option.getInt(first, "dog", "speed"));
+    }
+
+    @Test
+    public void testNullValues() throws Exception {
+        File file = File.createTempFile("commodus", ".yml");
+        file.deleteOnExit();
+        YAMLConfig config = new YAMLConfig(new YAMLConfigManager(null), file, null);
+        StringOption option = new StringOption(null, "names.%s");
+
+        Assert.assertNull(option.getString(config, "pet"));
+        config.set("names.pet", "Rex");
+        Assert.assertEquals("Rex", option.getString(config, "pet"));
+    }
+
+    private static File tempFile(String content) throws Exception {
+        File file = File.createTempFile("commodus", ".yml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(Charsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+public class ConfigCommentsTest {
+
+    private static final String DOCUMENT = "# Header\n"
+            + "\n"
+            + "# Top level\n"
+            + "first: 1\n"
+            + "section:\n"
+            + "  # Nested\n"
+            + "  child: true\n"
+            + "  list:\n"
+            + "  - a: 1\n"
+            + "    child: 2\n"
+            + "  text: |\n"
+            + "    # not a comment\n"
+            + "  # After block\n"
+            + "  'quoted.key': x\n"
+            + "last: 2\n"
+            + "# Footer\n";
+
+    @Test
+    public void testRead() throws Exception {
+        StringBuilder content = new StringBuilder();
+        ConfigComments comments = ConfigComments.read(new StringReader(DOCUMENT), content);
+
+        Assert.assertEquals(Arrays.asList(" Header"), comments.getHeader());
+        Assert.assertEquals(Arrays.asList(" Top level"), comments.getComments("first"));
+        Assert.assertEquals(Arrays.asList(" Nested"), comments.getComments("section.child"));
+        Assert.assertEquals(Arrays.asList(" After block"), comments.getComments("section.quoted.key"));
+        Assert.assertEquals(Arrays.asList(" Footer"), comments.getFooter());
+        Assert.assertFalse(comments.hasComments("section.list.child"));
+
+        Assert.assertEquals(DOCUMENT.split("\n", -1).length, content.toString().split("\n", -1).length);
+        Assert.assertTrue(content.indexOf("# not a comment") > 0);
+        Assert.assertEquals(-1, content.indexOf("Nested"));
+    }
+
+    @Test
+    public void testApply() throws Exception {
+        ConfigComments comments = ConfigComments.read(new StringReader(DOCUMENT), new StringBuilder());
+        comments.setComments("last", " Added");
+
+        String saved = comments.apply("first: 1\nsection:\n  child: true\n  'quoted.key': x\nlast: 2\n");
+        Assert.assertEquals("# Header\n\n"
+                + "# Top level\nfirst: 1\nsection:\n"
+                + "  # Nested\n  child: true\n\n"
+                + "  # After block\n  'quoted.key': x\n\n"
+                + "# Added\nlast: 2\n\n"
+                + "# Footer\n", saved);
+    }
+}
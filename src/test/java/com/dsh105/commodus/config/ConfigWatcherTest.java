@@ -0,0 +1,64 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+
+public class ConfigWatcherTest {
+
+    @Test
+    public void testOwnWritesSkipped() throws Exception {
+        // Relative, like the paths of configs in a plugin's data folder
+        File file = new File("commodus-watcher-test.yml");
+        file.deleteOnExit();
+        YAMLConfigManager manager = new YAMLConfigManager(null);
+        ConfigWatcher watcher = new ConfigWatcher(null, FileSystems.getDefault().newWatchService());
+        manager.setWatcher(watcher);
+        try {
+            YAMLConfig config = new YAMLConfig(manager, file, null);
+            config.set("value", 1);
+            config.saveConfig();
+            Assert.assertNull(watcher.readChange(config));
+
+            ConfigWriter.writeAtomically(file, "value: 2\n");
+            Assert.assertEquals("value: 2\n", watcher.readChange(config));
+            // Already reloaded
+            Assert.assertNull(watcher.readChange(config));
+
+            // A save still waiting to be written wins over changes made outside
+            ConfigWriter writer = new ConfigWriter().withDebounce(60000);
+            manager.setWriter(writer);
+            try {
+                config.set("value", 3);
+                config.saveConfig();
+                ConfigWriter.writeAtomically(file, "value: 4\n");
+                Assert.assertNull(watcher.readChange(config));
+            } finally {
+                writer.shutdown();
+            }
+            Assert.assertNull(watcher.readChange(config));
+        } finally {
+            watcher.close();
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import com.google.common.base.Charsets;
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+public class ConfigWriterTest {
+
+    @Test
+    public void testCoalescedWrites() throws Exception {
+        File file = File.createTempFile("commodus", ".yml");
+        file.deleteOnExit();
+        ConfigWriter writer = new ConfigWriter().withDebounce(60000);
+        try {
+            writer.write(file, "first: 1\n");
+            writer.write(file, "second: 2\n");
+            Assert.assertTrue(writer.isPending(file));
+            Assert.assertEquals(0, file.length());
+
+            writer.flush(file);
+            Assert.assertFalse(writer.isPending(file));
+            Assert.assertEquals("second: 2\n", read(file));
+            assertNoTempFiles(file);
+        } finally {
+            writer.shutdown();
+        }
+
+        // Written straight away once shut down
+        writer.write(file, "third: 3\n");
+        Assert.assertEquals("third: 3\n", read(file));
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final File file = File.createTempFile("commodus", ".yml");
+        file.deleteOnExit();
+        final CountDownLatch start = new CountDownLatch(1);
+        final String[] contents = new String[8];
+        final Exception[] failure = new Exception[1];
+        Thread[] threads = new Thread[contents.length];
+        for (int i = 0; i < threads.length; i++) {
+            final StringBuilder builder = new StringBuilder();
+            for (int line = 0; line < 1000; line++) {
+                builder.append("thread").append(i).append(": ").append(line).append('\n');
+            }
+            final String content = contents[i] = builder.toString();
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 20; j++) {
+                            ConfigWriter.writeAtomically(file, content);
+                        }
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertNull(failure[0]);
+        String written = read(file);
+        boolean whole = false;
+        for (String content : contents) {
+            whole |= content.equals(written);
+        }
+        Assert.assertTrue(whole);
+        assertNoTempFiles(file);
+    }
+
+    private static void assertNoTempFiles(File file) {
+        for (File sibling : file.getAbsoluteFile().getParentFile().listFiles()) {
+            String name = sibling.getName();
+            Assert.assertFalse(name.startsWith(file.getName() + ".") && name.endsWith(".tmp"));
+        }
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import com.google.common.base.Charsets;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading an option through {@link com.dsh105.commodus.config.Option#getValue(org.bukkit.configuration.file.FileConfiguration,
+ * String...)} with reading it from the cache of an {@link com.dsh105.commodus.config.IntOption}, including a shared
+ * option read from two configs in turn. Kept in this package so that configs can be loaded without a plugin
+ * <p>
+ * Run with {@code mvn test-compile}, then {@code java -cp <test classpath> org.openjdk.jmh.Main OptionBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OptionBenchmark {
+
+    private static final Option<Integer> OPTION = new Option<>(null, "pets.%s.%s", 1);
+    private static final IntOption INT_OPTION = new IntOption(null, "pets.%s.%s", 1);
+    private static final Option<Integer> SIMPLE_OPTION = new Option<>(null, "limit", 1);
+    private static final IntOption SIMPLE_INT_OPTION = new IntOption(null, "limit", 1);
+
+    private YAMLConfig config;
+    private YAMLConfig otherConfig;
+
+    @Setup
+    public void setup() throws IOException {
+        config = load("limit: 3\npets:\n  dog:\n    speed: 2\n");
+        otherConfig = load("limit: 5\npets:\n  dog:\n    speed: 4\n");
+    }
+
+    private static YAMLConfig load(String content) throws IOException {
+        File file = File.createTempFile("commodus", ".yml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(Charsets.UTF_8));
+        return new YAMLConfig(new YAMLConfigManager(null), file, null);
+    }
+
+    @Benchmark
+    public Integer simpleOption() {
+        return SIMPLE_OPTION.getValue(config.config());
+    }
+
+    @Benchmark
+    public int simpleIntOption() {
+        return SIMPLE_INT_OPTION.getInt(config);
+    }
+
+    @Benchmark
+    public Integer option() {
+        return OPTION.getValue(config.config(), "dog", "speed");
+    }
+
+    @Benchmark
+    public int intOption() {
+        return INT_OPTION.getInt(config, "dog", "speed");
+    }
+
+    @Benchmark
+    public int optionSharedByConfigs() {
+        return OPTION.getValue(config.config(), "dog", "speed") + OPTION.getValue(otherConfig.config(), "dog", "speed");
+    }
+
+    @Benchmark
+    public int intOptionSharedByConfigs() {
+        return INT_OPTION.getInt(config, "dog", "speed") + INT_OPTION.getInt(otherConfig, "dog", "speed");
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class PathTemplateTest {
+
+    @Test
+    public void testResolve() {
+        PathTemplate template = PathTemplate.compile("pets.%s.%s");
+        Assert.assertEquals(2, template.getPlaceholders());
+        Assert.assertEquals("pets.wolf.name", template.resolve("wolf", "name"));
+        Assert.assertEquals("pets.wolf", template.resolve("wolf", ""));
+        Assert.assertEquals("pets", template.resolve("", ""));
+        // Extra replacements are ignored, as with String.format
+        Assert.assertEquals("pets.a.b", template.resolve("a", "b", "c"));
+
+        Assert.assertEquals("plain.path", PathTemplate.compile("plain.path").resolve());
+        Assert.assertEquals("level.05", PathTemplate.compile("level.%02d").resolve(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingReplacements() {
+        PathTemplate.compile("pets.%s.%s").resolve("wolf");
+    }
+}
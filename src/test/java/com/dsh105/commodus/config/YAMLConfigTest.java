@@ -0,0 +1,128 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.config;
+
+import com.google.common.base.Charsets;
+import junit.framework.Assert;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+
+public class YAMLConfigTest {
+
+    @Test
+    public void testSwap() throws Exception {
+        File file = File.createTempFile("commodus", ".yml");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "kept: 1\nchanged: a\nremoved: true\nbecomes: 5\nsection:\n  inner: 2\n  gone: 3\n".getBytes(Charsets.UTF_8));
+        YAMLConfig config = new YAMLConfig(new YAMLConfigManager(null), file, null);
+
+        final List<Set<String>> reloads = new ArrayList<>();
+        config.addReloadListener(new YAMLConfig.ReloadListener() {
+            @Override
+            public void onReload(YAMLConfig config, Set<String> changedPaths) {
+                reloads.add(new HashSet<>(changedPaths));
+            }
+        });
+
+        YamlConfiguration values = new YamlConfiguration();
+        values.loadFromString("kept: 1\nchanged: b\nadded: x\nbecomes:\n  leaf: 5\nsection:\n  inner: 2\n  new: 4\n");
+        config.swap(values, new ConfigComments());
+        Assert.assertEquals(1, reloads.size());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("changed", "removed", "added", "becomes", "becomes.leaf", "section.gone", "section.new")), reloads.get(0));
+        Assert.assertEquals("b", config.getString("changed"));
+
+        // Listeners aren't told about reloads that change nothing
+        YamlConfiguration same = new YamlConfiguration();
+        same.loadFromString(values.saveToString());
+        config.swap(same, new ConfigComments());
+        Assert.assertEquals(1, reloads.size());
+    }
+
+    @Test
+    public void testEdit() throws Exception {
+        final File file = File.createTempFile("commodus", ".yml");
+        file.deleteOnExit();
+        final int[] saves = new int[1];
+        YAMLConfigManager manager = new YAMLConfigManager(null) {
+            @Override
+            void save(File file, FileConfiguration config, ConfigComments comments) {
+                saves[0]++;
+                super.save(file, config, comments);
+            }
+        };
+        final YAMLConfig config = new YAMLConfig(manager, file, null);
+        final Option<Integer> option = new Option<>(null, "pets.%s");
+
+        config.edit(new YAMLConfig.Edit() {
+            @Override
+            public void edit(YAMLConfig config) {
+                option.setValue(config, 1, "dogs");
+                option.setValue(config, 2, "cats");
+                Assert.assertEquals(0, saves[0]);
+                Assert.assertEquals(0, file.length());
+            }
+        });
+        Assert.assertEquals(1, saves[0]);
+        YamlConfiguration written = new YamlConfiguration();
+        written.loadFromString(read(file));
+        Assert.assertEquals(1, written.getInt("pets.dogs"));
+        Assert.assertEquals(2, written.getInt("pets.cats"));
+
+        // Nested edits are written once the outermost edit is complete
+        config.edit(new YAMLConfig.Edit() {
+            @Override
+            public void edit(YAMLConfig config) {
+                config.edit(new YAMLConfig.Edit() {
+                    @Override
+                    public void edit(YAMLConfig config) {
+                        option.setValue(config, 3, "dogs");
+                    }
+                });
+                Assert.assertEquals(1, saves[0]);
+                option.setValue(config, 4, "cats");
+            }
+        });
+        Assert.assertEquals(2, saves[0]);
+        Assert.assertTrue(read(file).contains("cats: 4"));
+
+        // Failed edits aren't written
+        String before = read(file);
+        try {
+            config.edit(new YAMLConfig.Edit() {
+                @Override
+                public void edit(YAMLConfig config) {
+                    option.setValue(config, 5, "dogs");
+                    throw new IllegalStateException();
+                }
+            });
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+        Assert.assertEquals(2, saves[0]);
+        Assert.assertEquals(before, read(file));
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8);
+    }
+}
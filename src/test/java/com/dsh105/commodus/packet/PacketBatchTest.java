@@ -0,0 +1,134 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.packet;
+
+import junit.framework.Assert;
+import org.bukkit.entity.Player;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+public class PacketBatchTest {
+
+    @Test
+    public void testOrderWithinConnection() {
+        FakeChannels channels = new FakeChannels();
+        Player player = channels.player("a");
+        PacketBatch batch = new PacketBatch(channels, String.class, 16);
+
+        batch.add("first", player);
+        batch.add("second", player);
+        batch.add("third", player);
+        // Nothing reaches the connection until the batch is flushed
+        Assert.assertTrue(channels.writes.isEmpty());
+        Assert.assertEquals(1, batch.getQueuedConnections());
+
+        batch.flush();
+        Assert.assertEquals(Collections.singletonList(Arrays.<Object>asList("first", "second", "third")), channels.writes.get("a"));
+        Assert.assertEquals(0, batch.getQueuedConnections());
+    }
+
+    @Test
+    public void testEarlyFlush() {
+        FakeChannels channels = new FakeChannels();
+        Player player = channels.player("a");
+        PacketBatch batch = new PacketBatch(channels, String.class, 2);
+
+        batch.add("first", Arrays.asList(player, channels.player("b")));
+        batch.add("second", player);
+        Assert.assertEquals(Collections.singletonList(Arrays.<Object>asList("first", "second")), channels.writes.get("a"));
+        Assert.assertNull(channels.writes.get("b"));
+
+        batch.flush();
+        Assert.assertEquals(1, channels.writes.get("a").size());
+        Assert.assertEquals(Collections.singletonList(Collections.<Object>singletonList("first")), channels.writes.get("b"));
+    }
+
+    @Test
+    public void testUnwritableConnection() {
+        FakeChannels channels = new FakeChannels();
+        Player player = channels.player("a");
+        PacketBatch batch = new PacketBatch(channels, String.class, 16);
+
+        batch.add("first", player);
+        channels.unwritable.add("a");
+        batch.add("second", player);
+        batch.flush();
+        Assert.assertNull(channels.writes.get("a"));
+        Assert.assertEquals(2, batch.getDroppedPackets());
+
+        channels.unwritable.clear();
+        batch.add("third", player);
+        batch.flush();
+        Assert.assertEquals(Collections.singletonList(Collections.<Object>singletonList("third")), channels.writes.get("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPacket() {
+        FakeChannels channels = new FakeChannels();
+        new PacketBatch(channels, String.class, 16).add(1, channels.player("a"));
+    }
+
+    // Each player's channel is their name
+    private static class FakeChannels extends PacketBatch.ChannelAccessor {
+
+        private final Map<Object, List<List<Object>>> writes = new HashMap<>();
+        private final Set<Object> unwritable = new HashSet<>();
+
+        private Player player(final String name) {
+            return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getName")) {
+                        return name;
+                    }
+                    if (method.getName().equals("hashCode")) {
+                        return name.hashCode();
+                    }
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    }
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        Object getChannel(Player player) {
+            return player.getName();
+        }
+
+        @Override
+        boolean isWritable(Object channel) {
+            return !unwritable.contains(channel);
+        }
+
+        @Override
+        void writeAndFlush(Object channel, List<Object> packets) {
+            List<List<Object>> channelWrites = writes.get(channel);
+            if (channelWrites == null) {
+                channelWrites = new ArrayList<>();
+                writes.put(channel, channelWrites);
+            }
+            channelWrites.add(new ArrayList<>(packets));
+        }
+    }
+}
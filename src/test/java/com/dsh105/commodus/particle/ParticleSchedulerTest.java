@@ -0,0 +1,52 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.particle;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class ParticleSchedulerTest {
+
+    @Test
+    public void testBudget() {
+        ParticleScheduler.Budget budget = new ParticleScheduler.Budget(5, 2);
+        Assert.assertTrue(budget.take("a"));
+        Assert.assertTrue(budget.take("a"));
+        // Player budget used up
+        Assert.assertFalse(budget.take("a"));
+        Assert.assertTrue(budget.take("b"));
+        Assert.assertTrue(budget.take("c"));
+        Assert.assertTrue(budget.take("c"));
+        // Tick budget used up
+        Assert.assertFalse(budget.take("d"));
+        Assert.assertEquals(5, budget.getSent());
+        Assert.assertEquals(2, budget.getSkipped());
+    }
+
+    @Test
+    public void testDetailAmount() {
+        double detail = 16 * 16;
+        Assert.assertEquals(20, ParticleScheduler.getDetailAmount(20, 10 * 10, detail));
+        Assert.assertEquals(20, ParticleScheduler.getDetailAmount(20, detail, detail));
+        Assert.assertEquals(10, ParticleScheduler.getDetailAmount(20, 20 * 20, detail));
+        Assert.assertEquals(5, ParticleScheduler.getDetailAmount(20, 40 * 40, detail));
+        // Never reduced to nothing
+        Assert.assertEquals(1, ParticleScheduler.getDetailAmount(3, 40 * 40, detail));
+        Assert.assertEquals(1, ParticleScheduler.getDetailAmount(1, 40 * 40, detail));
+    }
+}
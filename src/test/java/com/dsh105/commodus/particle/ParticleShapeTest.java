@@ -0,0 +1,63 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.particle;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class ParticleShapeTest {
+
+    @Test
+    public void testLine() {
+        double[] points = new double[15];
+        Assert.assertEquals(5, ParticleShape.line(0, 0, 0, 4, 8, -4, 5).toCoordinates(points));
+        Assert.assertEquals(0, points[0], 1e-9);
+        Assert.assertEquals(2, points[6], 1e-9);
+        Assert.assertEquals(4, points[7], 1e-9);
+        Assert.assertEquals(-4, points[14], 1e-9);
+    }
+
+    @Test
+    public void testCircleAndSphere() {
+        final double[] maxError = new double[1];
+        ParticleShape.circle(10, 64, -10, 3, 40).visit(new PointVisitor() {
+            @Override
+            public void visit(double x, double y, double z) {
+                Assert.assertEquals(64, y, 1e-9);
+                maxError[0] = Math.max(maxError[0], Math.abs(Math.hypot(x - 10, z + 10) - 3));
+            }
+        });
+        Assert.assertEquals(0, maxError[0], 1e-9);
+
+        ParticleShape.sphere(0, 0, 0, 2, 100).visit(new PointVisitor() {
+            @Override
+            public void visit(double x, double y, double z) {
+                Assert.assertEquals(2, Math.sqrt(x * x + y * y + z * z), 1e-9);
+            }
+        });
+    }
+
+    @Test
+    public void testHelix() {
+        double[] points = new double[3 * 9];
+        ParticleShape.helix(0, 0, 0, 1, 4, 2, 9).toCoordinates(points);
+        // Ends a whole number of turns later, at the top
+        Assert.assertEquals(points[0], points[24], 1e-9);
+        Assert.assertEquals(4, points[25], 1e-9);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.reflection;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class AccessorGeneratorTest {
+
+    public static class Target {
+
+        public static String staticName = "target";
+
+        public double x = 1.5;
+        public String name = "entity";
+        private int hidden = 7;
+
+        public long add(int a, long b, double c) {
+            return (long) (a + b + c);
+        }
+
+        public static List<String> list(String[] values) {
+            return Arrays.asList(values);
+        }
+
+        public void fail() throws Exception {
+            throw new Exception("checked");
+        }
+
+        private String secret(String prefix) {
+            return prefix + hidden;
+        }
+    }
+
+    @Test
+    public void testFieldGetters() throws Exception {
+        Target target = new Target();
+
+        FieldGetter<Target, Double> x = AccessorGenerator.getFieldGetter(Target.class.getField("x"));
+        Assert.assertTrue(AccessorGenerator.isGenerated(x));
+        Assert.assertEquals(1.5, x.get(target));
+
+        FieldGetter<Target, String> name = AccessorGenerator.getFieldGetter(Target.class.getField("name"));
+        Assert.assertEquals("entity", name.get(target));
+        Assert.assertSame(name, AccessorGenerator.getFieldGetter(Target.class.getField("name")));
+
+        FieldGetter<Target, String> staticName = AccessorGenerator.getFieldGetter(Target.class.getField("staticName"));
+        Assert.assertEquals("target", staticName.get(null));
+
+        FieldGetter<Target, Integer> hidden = AccessorGenerator.getFieldGetter(Target.class.getDeclaredField("hidden"));
+        Assert.assertFalse(AccessorGenerator.isGenerated(hidden));
+        Assert.assertEquals(7, (int) hidden.get(target));
+    }
+
+    @Test
+    public void testMethodInvokers() throws Exception {
+        Target target = new Target();
+
+        MethodInvoker add = AccessorGenerator.getMethodInvoker(Target.class.getMethod("add", int.class, long.class, double.class));
+        Assert.assertTrue(AccessorGenerator.isGenerated(add));
+        Assert.assertEquals(6L, add.invoke(target, 1, 2L, 3.0));
+
+        MethodInvoker list = AccessorGenerator.getMethodInvoker(Target.class.getMethod("list", String[].class));
+        Assert.assertEquals(Arrays.asList("a", "b"), list.invoke(null, new Object[]{new String[]{"a", "b"}}));
+
+        MethodInvoker secret = AccessorGenerator.getMethodInvoker(Target.class.getDeclaredMethod("secret", String.class));
+        Assert.assertFalse(AccessorGenerator.isGenerated(secret));
+        Assert.assertEquals("hidden7", secret.invoke(target, "hidden"));
+
+        MethodInvoker size = AccessorGenerator.getMethodInvoker(List.class.getMethod("size"));
+        Assert.assertTrue(AccessorGenerator.isGenerated(size));
+        Assert.assertEquals(2, size.invoke(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void testExceptionsAreNotWrapped() throws Exception {
+        MethodInvoker fail = AccessorGenerator.getMethodInvoker(Target.class.getMethod("fail"));
+        try {
+            fail.invoke(new Target());
+            Assert.fail();
+        } catch (Exception e) {
+            Assert.assertEquals("checked", e.getMessage());
+        }
+    }
+}
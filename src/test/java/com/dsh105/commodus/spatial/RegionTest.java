@@ -0,0 +1,68 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+public class RegionTest {
+
+    @Test
+    public void testAxisAlignedBox() {
+        Region box = new AxisAlignedBox(2, 0, 2, -2, 4, -2);
+        Assert.assertTrue(box.contains(0, 0, 0));
+        Assert.assertTrue(box.contains(2, 4, -2));
+        Assert.assertFalse(box.contains(0, 4.1, 0));
+
+        Assert.assertEquals(8, box.raycast(-10, 1, 0, 1, 0, 0), 1e-9);
+        Assert.assertEquals(0, box.raycast(0, 1, 0, 1, 0, 0), 1e-9);
+        Assert.assertEquals(-1, box.raycast(-10, 1, 0, -1, 0, 0), 1e-9);
+        Assert.assertEquals(-1, box.raycast(-10, 10, 0, 1, 0, 0), 1e-9);
+        // Enters the y slab first, but the box only once inside the x slab too
+        Assert.assertEquals(8, box.raycast(-10, -2, 0, 1, 0.5, 0), 1e-9);
+        Assert.assertEquals(-1, box.raycast(-10, -8, 0, 1, 0.5, 0), 1e-9);
+    }
+
+    @Test
+    public void testSphere() {
+        Region sphere = new Sphere(0, 64, 0, 3);
+        Assert.assertTrue(sphere.contains(0, 67, 0));
+        Assert.assertTrue(sphere.contains(1, 65, 1));
+        Assert.assertFalse(sphere.contains(2.5, 64, 2.5));
+
+        Assert.assertEquals(7, sphere.raycast(-10, 64, 0, 1, 0, 0), 1e-9);
+        // Direction doesn't need to be normalised
+        Assert.assertEquals(3.5, sphere.raycast(-10, 64, 0, 2, 0, 0), 1e-9);
+        Assert.assertEquals(-1, sphere.raycast(-10, 68, 0, 1, 0, 0), 1e-9);
+        Assert.assertEquals(-1, sphere.raycast(10, 64, 0, 1, 0, 0), 1e-9);
+    }
+
+    @Test
+    public void testCylinder() {
+        Region cylinder = new Cylinder(0, 10, 0, 2, 5);
+        Assert.assertTrue(cylinder.contains(1, 15, 1));
+        Assert.assertFalse(cylinder.contains(0, 9.9, 0));
+        Assert.assertFalse(cylinder.contains(1.5, 12, 1.5));
+
+        Assert.assertEquals(8, cylinder.raycast(-10, 12, 0, 1, 0, 0), 1e-9);
+        Assert.assertEquals(5, cylinder.raycast(0, 20, 0, 0, -1, 0), 1e-9);
+        Assert.assertEquals(-1, cylinder.raycast(3, 20, 0, 0, -1, 0), 1e-9);
+        // Passes over the top
+        Assert.assertEquals(-1, cylinder.raycast(-10, 16, 0, 1, 0, 0), 1e-9);
+    }
+}
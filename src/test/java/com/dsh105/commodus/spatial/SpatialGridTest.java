@@ -0,0 +1,56 @@
+/*
+ * This file is part of Commodus.
+ *
+ * Commodus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Commodus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Commodus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.dsh105.commodus.spatial;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class SpatialGridTest {
+
+    @Test
+    public void testUpdateAndCollect() {
+        SpatialGrid<String> grid = new SpatialGrid<>();
+        Assert.assertTrue(grid.update("a", 0, 0));
+        Assert.assertTrue(grid.update("b", -1, -1));
+        Assert.assertTrue(grid.update("c", 100, 100));
+        Assert.assertFalse(grid.update("a", 15, 15));
+
+        Set<String> found = new HashSet<>();
+        grid.collect(-10, -10, 10, 10, found);
+        Assert.assertEquals(2, found.size());
+        Assert.assertTrue(found.contains("a") && found.contains("b"));
+
+        // Move a far away, so only b remains nearby
+        Assert.assertTrue(grid.update("a", 1000, -1000));
+        found.clear();
+        grid.collect(-10, -10, 10, 10, found);
+        Assert.assertEquals(1, found.size());
+
+        // Areas larger than the number of occupied cells are searched by cell
+        found.clear();
+        grid.collect(-5000, -5000, 5000, 5000, found);
+        Assert.assertEquals(3, found.size());
+
+        Assert.assertTrue(grid.remove("c"));
+        Assert.assertFalse(grid.contains("c"));
+        Assert.assertEquals(2, grid.size());
+    }
+}